@@ -0,0 +1,295 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import com.example.ola.newsapp1.R;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves the bodies of the news the user is likely to open next into the {@link ArticleStore},
+ * so they open in the app right away, also offline.
+ *
+ * The bodies of up to {@link #MAX_ARTICLES} news are asked for in one request, which the
+ * {@link FetchPipeline} runs behind everything the user waits for. Prefetching keeps within two
+ * budgets: the store only takes so much room and deletes the least recently read bodies, and
+ * only so many bytes are downloaded per day. The bytes downloaded are kept in a small file,
+ * so the daily budget holds across restarts of the process.
+ */
+public final class ArticlePrefetcher {
+
+    private static final String LOG_TAG = ArticlePrefetcher.class.getName();
+
+    /** Largest number of bodies asked for at once, the news on screen and a few below */
+    static final int MAX_ARTICLES = 10;
+
+    /** Bytes that may be downloaded per day */
+    private static final long DEFAULT_BYTES_PER_DAY = 2 * 1024 * 1024;
+
+    /** Bytes a compressed body is expected to take on the network */
+    static final int ESTIMATED_ARTICLE_BYTES = 8 * 1024;
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Timeout of the request, bodies are never waited for by the user */
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    private static final String BUDGET_FILE_NAME = "article_budget";
+
+    private static ArticlePrefetcher sInstance;
+
+    /**
+     * Tells whether the user allows prefetching on the current network.
+     */
+    interface Policy {
+        boolean allowsPrefetch();
+    }
+
+    private final ArticleStore mStore;
+    private final FetchPipeline mPipeline;
+    private final Clock mClock;
+    private final File mBudgetFile;
+    private final long mBytesPerDay;
+    private final String mSearchUrl;
+    private final Policy mPolicy;
+
+    /** News whose bodies are being fetched. Guarded by this */
+    private final Set<String> mPending = new HashSet<>();
+
+    /** Start of the current budget day, -1 until read from the file. Guarded by this */
+    private long mDayStart = -1;
+
+    /** Bytes downloaded since the start of the day. Guarded by this */
+    private long mBytesToday;
+
+    /**
+     * Return the prefetcher shared by the whole app.
+     */
+    public static synchronized ArticlePrefetcher getInstance(Context context) {
+        if (sInstance == null) {
+            final Context applicationContext = context.getApplicationContext();
+            final ConnectivityManager connectivityManager = (ConnectivityManager)
+                    applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            sInstance = new ArticlePrefetcher(ArticleStore.getInstance(applicationContext),
+                    FetchPipeline.getInstance(), Clock.SYSTEM,
+                    new File(applicationContext.getCacheDir(), BUDGET_FILE_NAME),
+                    DEFAULT_BYTES_PER_DAY, NewsQuery.searchUrl(), new Policy() {
+                        @Override
+                        public boolean allowsPrefetch() {
+                            return isAllowed(applicationContext, connectivityManager);
+                        }
+                    });
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link ArticlePrefetcher}.
+     *
+     * @param store receives the bodies
+     * @param pipeline runs the requests
+     * @param clock tells when a new budget day starts
+     * @param budgetFile keeps the bytes downloaded today
+     * @param bytesPerDay is the number of bytes that may be downloaded per day
+     * @param searchUrl is the search endpoint the bodies are asked from, see {@link NewsQuery#searchUrl()}
+     * @param policy tells whether prefetching is allowed right now
+     */
+    ArticlePrefetcher(ArticleStore store, FetchPipeline pipeline, Clock clock, File budgetFile,
+                      long bytesPerDay, String searchUrl, Policy policy) {
+        mStore = store;
+        mPipeline = pipeline;
+        mClock = clock;
+        mBudgetFile = budgetFile;
+        mBytesPerDay = bytesPerDay;
+        mSearchUrl = searchUrl;
+        mPolicy = policy;
+    }
+
+    /**
+     * Save the bodies of the given news in the background. News already saved or being
+     * fetched are skipped, and so are the last ones when there are too many or the budget
+     * is running out.
+     *
+     * @param newsUrls are the web URLs of the news, the most likely to be opened first
+     * @param priority is {@link FetchPipeline.Priority#PREFETCH} while the user looks at
+     *                 the news, {@link FetchPipeline.Priority#BACKGROUND} otherwise
+     * @return the fetch, which ends with the number of bodies saved
+     */
+    public FetchPipeline.Call<Integer> prefetch(List<String> newsUrls, FetchPipeline.Priority priority) {
+        final List<String> candidates = new ArrayList<>(newsUrls);
+        return mPipeline.submit(new FetchPipeline.Stages<Integer, Integer>() {
+            @Override
+            public Integer fetch(FetchPipeline.Call<?> call) throws IOException {
+                if (!mPolicy.allowsPrefetch()) {
+                    return 0;
+                }
+                List<String> wanted = claim(candidates);
+                try {
+                    return wanted.isEmpty() ? 0 : fetchBodies(wanted, call);
+                } finally {
+                    synchronized (ArticlePrefetcher.this) {
+                        mPending.removeAll(wanted);
+                    }
+                }
+            }
+
+            @Override
+            public Integer postProcess(Integer saved) {
+                return saved;
+            }
+        }, priority, null);
+    }
+
+    /**
+     * Return the bytes that may still be downloaded today.
+     */
+    synchronized long getRemainingBytes() {
+        rollBudget();
+        return Math.max(0, mBytesPerDay - mBytesToday);
+    }
+
+    /**
+     * Return the news of the given ones that should be fetched now and mark them as pending.
+     * This reads the disk, it runs on the pipeline.
+     */
+    private synchronized List<String> claim(List<String> newsUrls) {
+        long remaining = getRemainingBytes();
+        int max = (int) Math.min(MAX_ARTICLES, remaining / ESTIMATED_ARTICLE_BYTES);
+        if (remaining > 0) {
+            // A part of the budget too small for a whole body still gets one
+            max = Math.max(1, max);
+        }
+        List<String> wanted = new ArrayList<>();
+        for (String newsUrl : newsUrls) {
+            if (wanted.size() >= max) {
+                break;
+            }
+            if (newsUrl != null && !mPending.contains(newsUrl) && !wanted.contains(newsUrl)
+                    && !mStore.contains(newsUrl)) {
+                wanted.add(newsUrl);
+            }
+        }
+        mPending.addAll(wanted);
+        return wanted;
+    }
+
+    /**
+     * Download the bodies of the given news and save them. Return the number saved.
+     */
+    private int fetchBodies(List<String> newsUrls, FetchPipeline.Call<?> call) throws IOException {
+        String url = NewsQuery.articleBodiesUrl(mSearchUrl, newsUrls);
+        if (url == null) {
+            return 0;
+        }
+        Map<String, String> bodies;
+        try {
+            bodies = QueryUtils.requestArticleBodies(url, TIMEOUT_MILLIS, call);
+        } finally {
+            // Whatever was read counts, also when the request failed or was cancelled
+            charge(call.getBytesRead());
+        }
+
+        // Saved right away, the bytes have been paid for even if the fetch is cancelled now
+        int saved = 0;
+        long savedBytes = 0;
+        for (Map.Entry<String, String> body : bodies.entrySet()) {
+            savedBytes += mStore.put(body.getKey(), body.getValue());
+            saved++;
+        }
+        Log.d(LOG_TAG, "Saved " + saved + " of " + newsUrls.size() + " bodies, "
+                + call.getBytesRead() + " bytes downloaded, " + savedBytes + " bytes stored");
+        return saved;
+    }
+
+    /**
+     * Add the given downloaded bytes to the budget of the day.
+     */
+    private synchronized void charge(long bytes) {
+        rollBudget();
+        mBytesToday += bytes;
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(mBudgetFile));
+            out.writeLong(mDayStart);
+            out.writeLong(mBytesToday);
+        } catch (IOException e) {
+            // The budget is kept in memory until the next write works
+            Log.w(LOG_TAG, "Problem writing the budget of the prefetch", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Read the budget from its file the first time, and start a new day once the current
+     * one is over.
+     */
+    private void rollBudget() {
+        if (mDayStart < 0) {
+            mDayStart = 0;
+            if (mBudgetFile.isFile()) {
+                DataInputStream in = null;
+                try {
+                    in = new DataInputStream(new FileInputStream(mBudgetFile));
+                    mDayStart = in.readLong();
+                    mBytesToday = in.readLong();
+                } catch (IOException e) {
+                    mDayStart = 0;
+                } finally {
+                    closeQuietly(in);
+                }
+            }
+        }
+        long now = mClock.currentTimeMillis();
+        // A clock set back starts a new day too
+        if (now - mDayStart >= DAY_MILLIS || now < mDayStart) {
+            mDayStart = now;
+            mBytesToday = 0;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing is left to read or write
+        }
+    }
+
+    /**
+     * Return true if the settings allow saving bodies on the current network.
+     */
+    private static boolean isAllowed(Context context, ConnectivityManager connectivityManager) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String setting = sharedPrefs.getString(
+                context.getString(R.string.settings_offline_articles_key),
+                context.getString(R.string.settings_offline_articles_default));
+        if (context.getString(R.string.settings_offline_articles_never_value).equals(setting)) {
+            return false;
+        }
+        NetworkInfo networkInfo = connectivityManager == null ? null : connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return false;
+        }
+        return context.getString(R.string.settings_offline_articles_always_value).equals(setting)
+                || !connectivityManager.isActiveNetworkMetered();
+    }
+}
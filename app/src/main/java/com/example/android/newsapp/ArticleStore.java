@@ -0,0 +1,183 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk store of the article bodies saved for offline reading, one file per news URL.
+ *
+ * Bodies are HTML and compress well, so every file is gzipped, which makes it several times
+ * smaller than the body. Files are named like those of the {@link ImageDiskCache} and the least
+ * recently read bodies are deleted once the directory grows past its size limit.
+ */
+final class ArticleStore {
+
+    private static final String DIRECTORY_NAME = "articles";
+
+    /** Room taken by the saved bodies, a compressed body takes 5 to 15 KB */
+    private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ArticleStore sInstance;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    /** Gives every write its own temporary file */
+    private final AtomicInteger mTempCounter = new AtomicInteger();
+
+    /**
+     * Return the store shared by the whole app.
+     */
+    static synchronized ArticleStore getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+            sInstance = new ArticleStore(directory, DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link ArticleStore}.
+     *
+     * @param directory where the bodies are stored
+     * @param maxBytes is the total size the compressed bodies may take before the oldest are deleted
+     */
+    ArticleStore(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return true if the body of the news at the given URL has been saved. This only looks
+     * the file up, it is cheap enough for a tap.
+     */
+    boolean contains(String newsUrl) {
+        return newsUrl != null && fileFor(newsUrl).exists();
+    }
+
+    /**
+     * Return the saved body of the news at the given URL, or null if there is none. This
+     * reads the disk, call it on a background thread.
+     */
+    String get(String newsUrl) {
+        File file;
+        synchronized (this) {
+            file = fileFor(newsUrl);
+            if (!file.exists()) {
+                return null;
+            }
+            // Touch the file so that eviction sees it as recently read
+            file.setLastModified(System.currentTimeMillis());
+        }
+        byte[] buffer = BufferPool.acquire();
+        try {
+            InputStream in = new GZIPInputStream(new FileInputStream(file));
+            try {
+                ByteArrayOutputStream body = new ByteArrayOutputStream(4 * buffer.length);
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, count);
+                }
+                return new String(body.toByteArray(), UTF_8);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Deleted by an eviction while we read it, or damaged
+            return null;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Save the body of the news at the given URL, compressed, and return the bytes it takes.
+     */
+    long put(String newsUrl, String body) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory);
+        }
+        // Write to a temporary file first so readers never see half a body
+        File temp = new File(mDirectory, mTempCounter.incrementAndGet() + TEMP_SUFFIX);
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(temp));
+        try {
+            out.write(body.getBytes(UTF_8));
+        } catch (IOException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        out.close();
+
+        File file = fileFor(newsUrl);
+        synchronized (this) {
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Unable to rename " + temp);
+            }
+            trimToSize();
+        }
+        return file.length();
+    }
+
+    /**
+     * Delete the least recently read bodies until the store fits into its size limit.
+     */
+    private void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxBytes) {
+            return;
+        }
+
+        List<File> byAge = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(byAge, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long left = a.lastModified();
+                long right = b.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        for (File file : byAge) {
+            if (size <= mMaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File fileFor(String newsUrl) {
+        return new File(mDirectory, ImageDiskCache.nameFor(newsUrl));
+    }
+}
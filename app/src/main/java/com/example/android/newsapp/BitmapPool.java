@@ -0,0 +1,88 @@
+package com.example.android.newsapp;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Bitmaps that no view shows anymore, kept so their memory can be decoded into again instead
+ * of allocating a new bitmap for every thumbnail.
+ *
+ * The pool is bounded by the bytes it holds, the oldest bitmaps are left to the garbage
+ * collector beyond that.
+ */
+final class BitmapPool {
+
+    /** A bitmap is not handed out for a picture needing less than this fraction of it */
+    private static final int MAX_WASTE_FACTOR = 4;
+
+    private final long mMaxBytes;
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<>();
+    private long mBytes;
+
+    /**
+     * Constructs a new {@link BitmapPool}.
+     *
+     * @param maxBytes is the total size of the bitmaps kept
+     */
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Keep the bitmap for reuse. The caller must not use it anymore.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getAllocationByteCount() > mMaxBytes) {
+            return;
+        }
+        mBitmaps.addLast(bitmap);
+        mBytes += bitmap.getAllocationByteCount();
+        while (mBytes > mMaxBytes) {
+            mBytes -= mBitmaps.removeFirst().getAllocationByteCount();
+        }
+    }
+
+    /**
+     * Return the smallest bitmap that can hold a picture of the given size, or null if there
+     * is none. The bitmap is removed from the pool.
+     */
+    synchronized Bitmap get(int byteCount) {
+        Bitmap best = null;
+        for (Bitmap bitmap : mBitmaps) {
+            int size = bitmap.getAllocationByteCount();
+            if (size >= byteCount && size <= (long) byteCount * MAX_WASTE_FACTOR
+                    && (best == null || size < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            removeIdentical(best);
+            mBytes -= best.getAllocationByteCount();
+        }
+        return best;
+    }
+
+    /**
+     * Drop every bitmap, when the system is low on memory.
+     */
+    synchronized void clear() {
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * Remove the very bitmap, Bitmap.equals may compare the pixels of two bitmaps.
+     */
+    private void removeIdentical(Bitmap bitmap) {
+        Iterator<Bitmap> iterator = mBitmaps.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == bitmap) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.android.newsapp;
+
+import android.content.ActivityNotFoundException;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.customtabs.CustomTabsClient;
+import android.support.customtabs.CustomTabsIntent;
+import android.support.customtabs.CustomTabsService;
+import android.support.customtabs.CustomTabsServiceConnection;
+import android.support.customtabs.CustomTabsSession;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+import com.example.ola.newsapp1.R;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Opens news in a browser with as little waiting as possible.
+ *
+ * Whether there is a browser, and which one supports Custom Tabs, is resolved once in the
+ * background instead of on every tap. While a screen is started the launcher stays bound to
+ * that browser, which is then warmed up and told which pages the user is likely to open next,
+ * so it can connect to them before the tap.
+ *
+ * Everything but the resolution happens on the main thread.
+ */
+public final class BrowserLauncher {
+
+    private static final String LOG_TAG = BrowserLauncher.class.getName();
+
+    /** Page used to find out which apps can show web pages */
+    private static final Uri PROBE_URI = Uri.parse("https://www.theguardian.com/");
+
+    /** Number of pages the browser is told about, it only prepares a few */
+    private static final int MAX_LIKELY_URLS = 4;
+
+    private static BrowserLauncher sInstance;
+
+    private final Context mContext;
+    private final Executor mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Results of the last resolution, until then a browser is assumed */
+    private volatile boolean mHasBrowser = true;
+    private volatile String mCustomTabsPackage;
+
+    /** Screen the launcher should be bound for, or null */
+    private Context mBoundContext;
+    private CustomTabsServiceConnection mConnection;
+    private CustomTabsSession mSession;
+
+    /** Pages to prepare once the session is ready */
+    private List<String> mLikelyUrls;
+
+    /**
+     * Return the launcher shared by the whole app.
+     */
+    public static synchronized BrowserLauncher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BrowserLauncher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private BrowserLauncher(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Find the browsers in the background, then bind to the one supporting Custom Tabs for
+     * the given screen until {@link #unbind(Context)}. Call it when the screen is started,
+     * browsers may have been installed or removed in the meantime.
+     */
+    public void bind(Context context) {
+        mBoundContext = context;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Intent viewIntent = new Intent(Intent.ACTION_VIEW, PROBE_URI);
+                final boolean hasBrowser = !mContext.getPackageManager().queryIntentActivities(
+                        viewIntent, PackageManager.MATCH_DEFAULT_ONLY).isEmpty();
+                final String customTabsPackage = CustomTabsClient.getPackageName(mContext, null);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onResolved(hasBrowser, customTabsPackage);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Let go of the browser when the given screen is stopped.
+     */
+    public void unbind(Context context) {
+        if (mBoundContext != context) {
+            return;
+        }
+        if (mConnection != null) {
+            mBoundContext.unbindService(mConnection);
+            mConnection = null;
+        }
+        mBoundContext = null;
+        mSession = null;
+        mLikelyUrls = null;
+    }
+
+    /**
+     * Tell the browser which pages are likely to be opened next, the most likely first.
+     */
+    public void mayLaunch(List<String> urls) {
+        mLikelyUrls = urls.size() > MAX_LIKELY_URLS ? urls.subList(0, MAX_LIKELY_URLS) : urls;
+        if (mSession == null || mLikelyUrls.isEmpty()) {
+            return;
+        }
+        List<Bundle> others = new ArrayList<>(mLikelyUrls.size() - 1);
+        for (int i = 1; i < mLikelyUrls.size(); i++) {
+            Bundle other = new Bundle();
+            other.putParcelable(CustomTabsService.KEY_URL, Uri.parse(mLikelyUrls.get(i)));
+            others.add(other);
+        }
+        mSession.mayLaunchUrl(Uri.parse(mLikelyUrls.get(0)), null, others);
+    }
+
+    /**
+     * Open the page in a Custom Tab of the warmed up browser, or in any browser.
+     *
+     * @return false if there is no browser to open it
+     */
+    public boolean open(Context context, String url) {
+        if (!mHasBrowser) {
+            return false;
+        }
+        Uri uri = Uri.parse(url);
+        String customTabsPackage = mCustomTabsPackage;
+        if (customTabsPackage != null) {
+            CustomTabsIntent customTabsIntent = new CustomTabsIntent.Builder(mSession)
+                    .setToolbarColor(ContextCompat.getColor(context, R.color.colorPrimary))
+                    .setShowTitle(true)
+                    .build();
+            // The browser that prepared the page should show it
+            customTabsIntent.intent.setPackage(customTabsPackage);
+            try {
+                customTabsIntent.launchUrl(context, uri);
+                return true;
+            } catch (ActivityNotFoundException e) {
+                Log.d(LOG_TAG, customTabsPackage + " is gone, opening " + url + " without it");
+            }
+        }
+        try {
+            context.startActivity(new Intent(Intent.ACTION_VIEW, uri));
+            return true;
+        } catch (ActivityNotFoundException e) {
+            return false;
+        }
+    }
+
+    private void onResolved(boolean hasBrowser, String customTabsPackage) {
+        mHasBrowser = hasBrowser;
+        mCustomTabsPackage = customTabsPackage;
+        if (mBoundContext == null || mConnection != null || customTabsPackage == null) {
+            return;
+        }
+
+        mConnection = new CustomTabsServiceConnection() {
+            @Override
+            public void onCustomTabsServiceConnected(ComponentName name, CustomTabsClient client) {
+                if (mConnection != this) {
+                    return;
+                }
+                // Start the browser process now, so a tap does not wait for it
+                client.warmup(0);
+                mSession = client.newSession(null);
+                if (mLikelyUrls != null) {
+                    mayLaunch(mLikelyUrls);
+                }
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                if (mConnection == this) {
+                    mSession = null;
+                }
+            }
+        };
+        if (!CustomTabsClient.bindCustomTabsService(mBoundContext, customTabsPackage, mConnection)) {
+            mConnection = null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.android.newsapp;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A few byte buffers shared by the readers of response bodies and downloads, so reading a
+ * response does not allocate a new buffer every time.
+ */
+final class BufferPool {
+
+    /** Size of every pooled buffer */
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    /** Number of buffers kept, about the number of bodies read at the same time */
+    private static final int MAX_POOLED = 8;
+
+    private static final ConcurrentLinkedQueue<byte[]> sBuffers = new ConcurrentLinkedQueue<>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * Return a buffer of {@link #BUFFER_SIZE} bytes. Its content is undefined.
+     */
+    static byte[] acquire() {
+        byte[] buffer = sBuffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Give back a buffer returned by {@link #acquire()}. The caller must not use it anymore.
+     */
+    static void release(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE && sBuffers.size() < MAX_POOLED) {
+            sBuffers.offer(buffer);
+        }
+    }
+}
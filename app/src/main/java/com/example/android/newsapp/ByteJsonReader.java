@@ -0,0 +1,374 @@
+package com.example.android.newsapp;
+
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads a JSON document straight from the UTF-8 bytes of a stream, a token at a time.
+ *
+ * The bytes are read into a pooled buffer and never decoded as a whole. Names are compared
+ * with the expected ones byte by byte, values that are skipped are only scanned, and only the
+ * strings the caller asks for become Java strings. It is lenient about the commas and colons
+ * between tokens, which the Guardian always sends correctly.
+ */
+final class ByteJsonReader implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream mIn;
+
+    /** Bytes read from the stream, the unread ones are between mPos and mLimit */
+    private byte[] mBuffer;
+    private int mPos;
+    private int mLimit;
+
+    /** True if the string scanned last contains escape sequences */
+    private boolean mEscaped;
+
+    /**
+     * Constructs a new {@link ByteJsonReader}. Close it to give its buffer back; the stream
+     * is left open.
+     */
+    ByteJsonReader(InputStream in) {
+        mIn = in;
+        mBuffer = BufferPool.acquire();
+    }
+
+    /**
+     * Return the type of the next token without consuming it. Names are reported as strings.
+     */
+    JsonToken peek() throws IOException {
+        int c = nextSignificantByte();
+        switch (c) {
+            case -1:
+                return JsonToken.END_DOCUMENT;
+            case '{':
+                return JsonToken.BEGIN_OBJECT;
+            case '}':
+                return JsonToken.END_OBJECT;
+            case '[':
+                return JsonToken.BEGIN_ARRAY;
+            case ']':
+                return JsonToken.END_ARRAY;
+            case '"':
+                return JsonToken.STRING;
+            case 't':
+            case 'f':
+                return JsonToken.BOOLEAN;
+            case 'n':
+                return JsonToken.NULL;
+            default:
+                return JsonToken.NUMBER;
+        }
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * Return true if the current object or array has another element.
+     */
+    boolean hasNext() throws IOException {
+        int c = nextSignificantByte();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    /**
+     * Consume the next name and return its index in the given names, or -1 if it is none
+     * of them. The name is not turned into a string.
+     */
+    int nextName(byte[][] names) throws IOException {
+        expect('"');
+        int length = scanString();
+        int index = -1;
+        if (!mEscaped) {
+            for (int i = 0; i < names.length && index < 0; i++) {
+                if (regionEquals(names[i], length)) {
+                    index = i;
+                }
+            }
+        } else {
+            // Escaped names are rare, compare them decoded
+            byte[] decoded = decodeString(length).getBytes(UTF_8);
+            for (int i = 0; i < names.length && index < 0; i++) {
+                if (Arrays.equals(names[i], decoded)) {
+                    index = i;
+                }
+            }
+        }
+        mPos += length + 1;
+        return index;
+    }
+
+    /**
+     * Consume the next value and return it as a string, or null if it is null.
+     * Numbers and booleans are returned as they were written.
+     */
+    String nextString() throws IOException {
+        int c = nextSignificantByte();
+        if (c == '"') {
+            mPos++;
+            int length = scanString();
+            String value = decodeString(length);
+            mPos += length + 1;
+            return value;
+        }
+        if (c == '{' || c == '[' || c == '}' || c == ']' || c == -1) {
+            throw new MalformedJsonException("Expected a string but was " + peek());
+        }
+        int length = scanLiteral();
+        String literal = new String(mBuffer, mPos, length, UTF_8);
+        mPos += length;
+        return "null".equals(literal) ? null : literal;
+    }
+
+    /**
+     * Consume the next value, with everything it contains, without decoding any of it.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = nextSignificantByte();
+            switch (c) {
+                case -1:
+                    throw new MalformedJsonException("Unexpected end of document");
+                case '{':
+                case '[':
+                    depth++;
+                    mPos++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    mPos++;
+                    break;
+                case '"':
+                    mPos++;
+                    skipString();
+                    break;
+                default:
+                    mPos += scanLiteral();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Give the buffer back to the pool. The stream is not closed.
+     */
+    @Override
+    public void close() {
+        BufferPool.release(mBuffer);
+        mBuffer = null;
+    }
+
+    /**
+     * Return the next byte that is not whitespace or a separator without consuming it,
+     * or -1 at the end of the stream.
+     */
+    private int nextSignificantByte() throws IOException {
+        while (true) {
+            if (mPos == mLimit && !fill(1)) {
+                return -1;
+            }
+            byte c = mBuffer[mPos];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',' || c == ':') {
+                mPos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = nextSignificantByte();
+        if (c != expected) {
+            throw new MalformedJsonException("Expected " + expected + " but was "
+                    + (c == -1 ? "end of document" : String.valueOf((char) c)));
+        }
+        mPos++;
+    }
+
+    /**
+     * Make sure the whole string starting at the current position is in the buffer and
+     * return its length in bytes, without the closing quote.
+     */
+    private int scanString() throws IOException {
+        mEscaped = false;
+        int offset = 0;
+        while (true) {
+            if (mPos + offset >= mLimit && !fill(offset + 1)) {
+                throw new MalformedJsonException("Unterminated string");
+            }
+            byte c = mBuffer[mPos + offset];
+            if (c == '"') {
+                return offset;
+            }
+            if (c == '\\') {
+                mEscaped = true;
+                // The escaped character may be a quote, step over it
+                offset++;
+            }
+            offset++;
+        }
+    }
+
+    /**
+     * Consume a string without keeping it, the buffer is refilled as often as needed.
+     */
+    private void skipString() throws IOException {
+        boolean escape = false;
+        while (true) {
+            if (mPos == mLimit && !fill(1)) {
+                throw new MalformedJsonException("Unterminated string");
+            }
+            byte c = mBuffer[mPos++];
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Make sure the whole number or literal at the current position is in the buffer and
+     * return its length in bytes.
+     */
+    private int scanLiteral() throws IOException {
+        int offset = 0;
+        while (true) {
+            if (mPos + offset >= mLimit && !fill(offset + 1)) {
+                return offset;
+            }
+            byte c = mBuffer[mPos + offset];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',' || c == ':'
+                    || c == '}' || c == ']') {
+                return offset;
+            }
+            offset++;
+        }
+    }
+
+    private boolean regionEquals(byte[] name, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mBuffer[mPos + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode the string of the given length at the current position, in the buffer.
+     */
+    private String decodeString(int length) throws IOException {
+        if (!mEscaped) {
+            return new String(mBuffer, mPos, length, UTF_8);
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        int start = mPos;
+        int end = mPos + length;
+        int i = start;
+        while (i < end) {
+            if (mBuffer[i] != '\\') {
+                i++;
+                continue;
+            }
+            // Decode the plain bytes before the escape sequence together
+            builder.append(new String(mBuffer, start, i - start, UTF_8));
+            char escaped = (char) mBuffer[i + 1];
+            i += 2;
+            switch (escaped) {
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 > end) {
+                        throw new MalformedJsonException("Unterminated escape sequence");
+                    }
+                    char unicode = 0;
+                    for (int escapeEnd = i + 4; i < escapeEnd; i++) {
+                        int digit = Character.digit(mBuffer[i], 16);
+                        if (digit < 0) {
+                            throw new MalformedJsonException("Malformed escape sequence");
+                        }
+                        unicode = (char) (unicode << 4 | digit);
+                    }
+                    builder.append(unicode);
+                    break;
+                default:
+                    // Quotes, backslashes and slashes stand for themselves
+                    builder.append(escaped);
+                    break;
+            }
+            start = i;
+        }
+        builder.append(new String(mBuffer, start, end - start, UTF_8));
+        return builder.toString();
+    }
+
+    /**
+     * Read from the stream until at least the given number of bytes from the current position
+     * are in the buffer. Return false if the stream ended before.
+     */
+    private boolean fill(int minimum) throws IOException {
+        // Move the unread bytes to the start of the buffer, growing it for very long strings
+        if (mPos > 0) {
+            System.arraycopy(mBuffer, mPos, mBuffer, 0, mLimit - mPos);
+            mLimit -= mPos;
+            mPos = 0;
+        }
+        if (minimum > mBuffer.length) {
+            byte[] grown = new byte[Math.max(minimum, mBuffer.length * 2)];
+            System.arraycopy(mBuffer, 0, grown, 0, mLimit);
+            BufferPool.release(mBuffer);
+            mBuffer = grown;
+        }
+        while (mLimit < minimum) {
+            int count = mIn.read(mBuffer, mLimit, mBuffer.length - mLimit);
+            if (count == -1) {
+                return false;
+            }
+            mLimit += count;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.android.newsapp;
+
+/**
+ * Source of the current time, so tests can control how old cached news are.
+ */
+public interface Clock {
+
+    /** The clock of the device */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Return the current time in milliseconds since the epoch.
+     */
+    long currentTimeMillis();
+}
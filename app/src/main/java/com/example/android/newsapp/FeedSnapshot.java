@@ -0,0 +1,238 @@
+package com.example.android.newsapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The first rows of the feed shown last, in a file laid out so they can be painted right
+ * after a cold start without parsing anything.
+ *
+ * The file is mapped into memory and every row is only decoded when it is first asked for.
+ * It starts with a header (magic, save time, row count and the query key), followed by one
+ * record of fixed size per row, holding the date and the offset and length of every text,
+ * and ends with the table of all texts in UTF-8. Numbers are big endian, a length of -1
+ * stands for null.
+ */
+final class FeedSnapshot {
+
+    /** Marks the start of every snapshot file, so foreign or outdated files are ignored */
+    private static final int MAGIC = 0x4e534e31;
+
+    /** Number of rows kept, enough for the first screen of any device */
+    static final int MAX_ROWS = 30;
+
+    /** Texts of a row: title, section, author, url and thumbnail */
+    private static final int FIELD_COUNT = 5;
+    private static final int TITLE = 0;
+    private static final int SECTION = 1;
+    private static final int AUTHOR = 2;
+    private static final int URL = 3;
+    private static final int THUMBNAIL = 4;
+
+    /** magic, savedAt, rowCount, query key offset and length */
+    private static final int HEADER_BYTES = 4 + 8 + 4 + 8;
+    /** date, then offset and length of every text */
+    private static final int ROW_BYTES = 8 + FIELD_COUNT * 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mRowCount;
+    private final int mStringsStart;
+
+    private FeedSnapshot(ByteBuffer buffer, int rowCount) {
+        mBuffer = buffer;
+        mRowCount = rowCount;
+        mStringsStart = HEADER_BYTES + rowCount * ROW_BYTES;
+    }
+
+    /**
+     * Map the snapshot in the given file. Return null if there is none or it is not valid.
+     */
+    static FeedSnapshot open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                // The mapping stays valid after the file is closed
+                MappedByteBuffer buffer = randomAccessFile.getChannel()
+                        .map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+                if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                    return null;
+                }
+                int rowCount = buffer.getInt(12);
+                if (rowCount < 0 || rowCount > MAX_ROWS
+                        || HEADER_BYTES + (long) rowCount * ROW_BYTES > buffer.capacity()) {
+                    return null;
+                }
+                return new FeedSnapshot(buffer, rowCount);
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replace the snapshot in the given file with the first rows of the news. The file is
+     * written beside and renamed, so a reader never maps half a snapshot.
+     *
+     * @param queryKey identifies the query of the news, see {@link NewsQuery#getKey()}
+     */
+    static void write(File file, String queryKey, long savedAt, List<News> news) throws IOException {
+        int rowCount = Math.min(news.size(), MAX_ROWS);
+        byte[][] strings = new byte[1 + rowCount * FIELD_COUNT][];
+        strings[0] = bytesOf(queryKey);
+        int stringBytes = strings[0] == null ? 0 : strings[0].length;
+        for (int row = 0; row < rowCount; row++) {
+            News item = news.get(row);
+            int first = 1 + row * FIELD_COUNT;
+            strings[first + TITLE] = bytesOf(item.getNewsTitle());
+            strings[first + SECTION] = bytesOf(item.getNewsSection());
+            strings[first + AUTHOR] = bytesOf(item.getAuthorsName());
+            strings[first + URL] = bytesOf(item.getNewsUrl());
+            strings[first + THUMBNAIL] = bytesOf(item.getThumbnailUrl());
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                byte[] bytes = strings[first + field];
+                stringBytes += bytes == null ? 0 : bytes.length;
+            }
+        }
+
+        int stringsStart = HEADER_BYTES + rowCount * ROW_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(stringsStart + stringBytes);
+        buffer.putInt(MAGIC).putLong(savedAt).putInt(rowCount);
+        int stringOffset = putString(buffer, stringsStart, 0, strings[0]);
+        for (int row = 0; row < rowCount; row++) {
+            buffer.putLong(news.get(row).getNewsDate());
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                stringOffset = putString(buffer, stringsStart, stringOffset,
+                        strings[1 + row * FIELD_COUNT + field]);
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(buffer.array());
+            // The rename must not become visible before the content
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp);
+        }
+    }
+
+    /**
+     * Return the key of the query the rows were loaded for.
+     */
+    String getQueryKey() {
+        return readString(HEADER_BYTES - 8);
+    }
+
+    /**
+     * Return when the news of the rows were confirmed by the server.
+     */
+    long getSavedAt() {
+        return mBuffer.getLong(4);
+    }
+
+    /**
+     * Return the rows as news, each decoded the first time it is asked for.
+     * The list cannot be modified and may be read from any thread.
+     */
+    List<News> getNews() {
+        return new Rows();
+    }
+
+    /**
+     * Write the offset and length of a text into the row table and the text into the table
+     * of texts. Return the offset of the next text.
+     */
+    private static int putString(ByteBuffer buffer, int stringsStart, int offset, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(offset).putInt(-1);
+            return offset;
+        }
+        buffer.putInt(offset).putInt(bytes.length);
+        int position = buffer.position();
+        buffer.position(stringsStart + offset);
+        buffer.put(bytes);
+        buffer.position(position);
+        return offset + bytes.length;
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? null : value.getBytes(UTF_8);
+    }
+
+    /**
+     * Decode the text whose offset and length are at the given position. Return null for
+     * null texts and for texts outside the file.
+     */
+    private String readString(int position) {
+        int offset = mBuffer.getInt(position);
+        int length = mBuffer.getInt(position + 4);
+        if (length < 0 || offset < 0 || (long) mStringsStart + offset + length > mBuffer.capacity()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        // Relative reads move the position of the buffer, which is shared by all rows
+        synchronized (mBuffer) {
+            mBuffer.position(mStringsStart + offset);
+            mBuffer.get(bytes);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Decode the given row.
+     */
+    News readNews(int row) {
+        int position = HEADER_BYTES + row * ROW_BYTES;
+        long date = mBuffer.getLong(position);
+        int fields = position + 8;
+        return new News(readString(fields + TITLE * 8), readString(fields + SECTION * 8),
+                readString(fields + AUTHOR * 8), date, readString(fields + URL * 8),
+                readString(fields + THUMBNAIL * 8));
+    }
+
+    /**
+     * The rows of the snapshot, decoded on demand.
+     */
+    private final class Rows extends AbstractList<News> implements RandomAccess {
+        private final News[] mNews = new News[mRowCount];
+
+        @Override
+        public synchronized News get(int index) {
+            if (index < 0 || index >= mRowCount) {
+                throw new IndexOutOfBoundsException("Row " + index + " of " + mRowCount);
+            }
+            News news = mNews[index];
+            if (news == null) {
+                news = readNews(index);
+                mNews[index] = news;
+            }
+            return news;
+        }
+
+        @Override
+        public int size() {
+            return mRowCount;
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package com.example.android.newsapp;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the fetches of the app on threads of its own, the most urgent first, and stops the ones
+ * nobody waits for anymore.
+ *
+ * Every fetch goes through the same stages. The request is sent and the response is read and
+ * parsed while it arrives ({@link Stages#fetch(Call)}). The parsed response is post-processed,
+ * for example merged into the cache ({@link Stages#postProcess(Object)}). The result is then
+ * delivered to the {@link Callback} of the fetch on the delivery executor, which is the main
+ * thread in the app.
+ *
+ * A fetch can be cancelled at any time. Cancellation is checked before every stage and on every
+ * read of a body, and cancelling a fetch that is still reading closes its connection, so a read
+ * blocked on the network returns right away and nothing more of the body is downloaded or
+ * parsed. A fetch cancelled once its response has been parsed is post-processed all the same,
+ * so what was downloaded is kept, and only its delivery is skipped.
+ *
+ * Fetches the user waits for run before prefetches, and prefetches before background work. One
+ * thread is always kept free of the last two, so a long sync never delays what is on screen.
+ * A thread runs the fetches the user waits for at the default priority and the others at a
+ * background priority, so they do not take the CPU away from drawing.
+ * Only a bounded number of fetches can wait. When the queue is full, the least urgent fetch
+ * waiting is dropped, or the new one if nothing waiting is less urgent.
+ *
+ * Nothing but {@link #getInstance()} depends on Android, so the pipeline can be tested on a
+ * plain JVM.
+ */
+public final class FetchPipeline {
+
+    /**
+     * How urgent a fetch is, the most urgent first.
+     */
+    public enum Priority {
+        /** The user is waiting for it */
+        USER,
+        /** The user is likely to want it soon, such as the next page of the list */
+        PREFETCH,
+        /** Nobody is looking, such as a periodic sync */
+        BACKGROUND
+    }
+
+    /**
+     * The work of one fetch, run stage by stage on a thread of the pipeline.
+     *
+     * @param <R> is the parsed response
+     * @param <T> is the result delivered
+     */
+    public interface Stages<R, T> {
+        /**
+         * Send the request, then read and parse the response. Connections must be attached to
+         * the call and bodies read through {@link Call#read(InputStream)}, so cancelling the call
+         * closes them.
+         */
+        R fetch(Call<?> call) throws IOException;
+
+        /**
+         * Turn the parsed response into the result, for example by storing it. This is not
+         * called once the fetch has been cancelled.
+         */
+        T postProcess(R response) throws IOException;
+    }
+
+    /**
+     * Told on the delivery executor how a fetch ended. Exactly one method is called.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+
+        void onFailure(IOException e);
+
+        /** The fetch was cancelled or dropped before its callback ran */
+        void onCancelled();
+    }
+
+    /** Number of threads of the app wide pipeline, one request per connection to the server */
+    private static final int DEFAULT_THREADS = NewsHttpClient.MAX_REQUESTS_PER_HOST;
+
+    /** Number of fetches that may wait in the app wide pipeline */
+    private static final int DEFAULT_MAX_QUEUED = 16;
+
+    /** Priority of a thread running a fetch the user does not wait for, nice 10 on Android */
+    private static final int LOW_THREAD_PRIORITY = Thread.NORM_PRIORITY - 1;
+
+    /** Idle threads go away after this long, fetches only come now and then */
+    private static final long KEEP_ALIVE_MILLIS = 30 * 1000;
+
+    /** Orders the waiting fetches, the most urgent and then the oldest first */
+    private static final Comparator<Call<?>> MOST_URGENT_FIRST = new Comparator<Call<?>>() {
+        @Override
+        public int compare(Call<?> a, Call<?> b) {
+            int byPriority = a.mPriority.compareTo(b.mPriority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return a.mSequence < b.mSequence ? -1 : (a.mSequence == b.mSequence ? 0 : 1);
+        }
+    };
+
+    private static FetchPipeline sInstance;
+
+    private final int mMaxThreads;
+    private final int mMaxQueued;
+
+    /** Number of threads fetches that are not {@link Priority#USER} may run on */
+    private final int mMaxLowPriorityRunning;
+
+    private final ThreadFactory mThreadFactory;
+    private final Executor mDeliveryExecutor;
+
+    /** Everything below is guarded by the pipeline, and so is the state of every call */
+    private final PriorityQueue<Call<?>> mQueue = new PriorityQueue<>(DEFAULT_MAX_QUEUED, MOST_URGENT_FIRST);
+    private long mNextSequence;
+    private int mThreads;
+    private int mIdleThreads;
+    private int mLowPriorityRunning;
+
+    /** Fetches submitted whose callback has not run yet */
+    private int mActiveCalls;
+
+    /** Body bytes read by all fetches, and by the ones that were cancelled */
+    private final AtomicLong mBytesRead = new AtomicLong();
+    private final AtomicLong mBytesWasted = new AtomicLong();
+
+    /**
+     * Return the pipeline shared by the whole app, which delivers on the main thread.
+     */
+    public static synchronized FetchPipeline getInstance() {
+        if (sInstance == null) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            final AtomicInteger threadCount = new AtomicInteger();
+            sInstance = new FetchPipeline(DEFAULT_THREADS, DEFAULT_MAX_QUEUED, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "news-pipeline-" + threadCount.incrementAndGet());
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    mainHandler.post(runnable);
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link FetchPipeline} with daemon threads.
+     *
+     * @param threads is the number of fetches that may run at the same time
+     * @param maxQueued is the number of fetches that may wait
+     * @param deliveryExecutor runs the callbacks
+     */
+    FetchPipeline(int threads, int maxQueued, Executor deliveryExecutor) {
+        this(threads, maxQueued, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "fetch-pipeline-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, deliveryExecutor);
+    }
+
+    /**
+     * Constructs a new {@link FetchPipeline}.
+     *
+     * @param threads is the number of fetches that may run at the same time
+     * @param maxQueued is the number of fetches that may wait
+     * @param threadFactory creates the threads of the pipeline
+     * @param deliveryExecutor runs the callbacks
+     */
+    FetchPipeline(int threads, int maxQueued, ThreadFactory threadFactory, Executor deliveryExecutor) {
+        mMaxThreads = threads;
+        mMaxQueued = maxQueued;
+        mMaxLowPriorityRunning = Math.max(1, threads - 1);
+        mThreadFactory = threadFactory;
+        mDeliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Queue a fetch. It is dropped right away if the queue is full of fetches that are at
+     * least as urgent.
+     *
+     * @param callback is told how the fetch ended, or null if the caller waits with
+     * {@link Call#await(long, TimeUnit)} instead
+     * @return the call, which can be cancelled
+     */
+    public <R, T> Call<T> submit(Stages<R, T> stages, Priority priority, Callback<T> callback) {
+        Call<T> call = new Call<>(this, stages, priority, callback);
+        Call<?> dropped = null;
+        synchronized (this) {
+            call.mSequence = mNextSequence++;
+            mActiveCalls++;
+            if (mQueue.size() >= mMaxQueued) {
+                dropped = leastUrgentQueued();
+                if (dropped.mPriority.compareTo(priority) > 0) {
+                    mQueue.remove(dropped);
+                } else {
+                    dropped = call;
+                }
+                dropped.mCancelled = true;
+            }
+            if (dropped != call) {
+                mQueue.add(call);
+                if (mQueue.size() > mIdleThreads && mThreads < mMaxThreads) {
+                    mThreads++;
+                    mThreadFactory.newThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            work();
+                        }
+                    }).start();
+                }
+                notifyAll();
+            }
+        }
+        if (dropped != null) {
+            finish(dropped, null, null);
+        }
+        return call;
+    }
+
+    /**
+     * Return the number of body bytes read by the fetches that were cancelled while they ran.
+     */
+    long getBytesWasted() {
+        return mBytesWasted.get();
+    }
+
+    /**
+     * Return the number of body bytes read by all fetches.
+     */
+    long getBytesRead() {
+        return mBytesRead.get();
+    }
+
+    /**
+     * Wait until every fetch submitted so far has ended and its callback ran.
+     *
+     * @return false if the timeout expired first
+     */
+    synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (mActiveCalls > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Run fetches until there has been nothing to do for a while.
+     */
+    private void work() {
+        Call<?> call;
+        while ((call = take()) != null) {
+            run(call);
+        }
+    }
+
+    /**
+     * Return the next fetch this thread may run, or null once the thread should go away.
+     */
+    private synchronized Call<?> take() {
+        long idleSince = System.nanoTime();
+        mIdleThreads++;
+        try {
+            while (true) {
+                Call<?> head = mQueue.peek();
+                if (head != null && (head.mPriority == Priority.USER
+                        || mLowPriorityRunning < mMaxLowPriorityRunning)) {
+                    mQueue.poll();
+                    if (head.mPriority != Priority.USER) {
+                        mLowPriorityRunning++;
+                    }
+                    head.mThread = Thread.currentThread();
+                    return head;
+                }
+                long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSince);
+                if (head == null && idleMillis >= KEEP_ALIVE_MILLIS) {
+                    mThreads--;
+                    return null;
+                }
+                try {
+                    wait(Math.max(1, KEEP_ALIVE_MILLIS - idleMillis));
+                } catch (InterruptedException e) {
+                    // Only cancels interrupt the threads, for fetches that are over
+                }
+            }
+        } finally {
+            mIdleThreads--;
+        }
+    }
+
+    /**
+     * Run the stages of the fetch on this thread, then deliver how it ended.
+     */
+    private <T> void run(Call<T> call) {
+        T result = null;
+        IOException failure = null;
+        // Thread priorities map to nice values on Android, THREAD_PRIORITY_DEFAULT for the user
+        Thread.currentThread().setPriority(call.mPriority == Priority.USER
+                ? Thread.NORM_PRIORITY : LOW_THREAD_PRIORITY);
+        try {
+            result = runStages(call.mStages, call);
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            synchronized (this) {
+                call.mThread = null;
+                call.mConnection = null;
+                if (call.mPriority != Priority.USER) {
+                    mLowPriorityRunning--;
+                }
+                notifyAll();
+                // A cancel may have interrupted this thread, the next fetch must not see it
+                Thread.interrupted();
+            }
+            mBytesRead.addAndGet(call.mBytesRead);
+            if (call.mCancelled && !call.mPostProcessing) {
+                mBytesWasted.addAndGet(call.mBytesRead);
+            }
+        }
+        finish(call, result, failure);
+    }
+
+    private <R, T> T runStages(Stages<R, T> stages, Call<T> call) throws IOException {
+        call.throwIfCancelled();
+        R response = stages.fetch(call);
+        synchronized (this) {
+            call.throwIfCancelled();
+            // From now on a cancel neither interrupts the thread nor closes the connection
+            call.mPostProcessing = true;
+        }
+        return stages.postProcess(response);
+    }
+
+    /**
+     * Keep the result for the ones waiting for it and run the callback.
+     */
+    private <T> void finish(final Call<T> call, T result, final IOException failure) {
+        synchronized (this) {
+            call.mResult = failure == null ? result : null;
+            call.mDone = true;
+            notifyAll();
+        }
+        final Callback<T> callback = call.mCallback;
+        if (callback == null) {
+            onDelivered();
+            return;
+        }
+        final T delivered = result;
+        mDeliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // A fetch cancelled after it ended is still reported as cancelled
+                    if (call.mCancelled) {
+                        callback.onCancelled();
+                    } else if (failure != null) {
+                        callback.onFailure(failure);
+                    } else {
+                        callback.onResult(delivered);
+                    }
+                } finally {
+                    onDelivered();
+                }
+            }
+        });
+    }
+
+    private synchronized void onDelivered() {
+        mActiveCalls--;
+        notifyAll();
+    }
+
+    /**
+     * Return the waiting fetch that is least urgent, the newest of the lowest priority.
+     */
+    private Call<?> leastUrgentQueued() {
+        Call<?> leastUrgent = null;
+        for (Call<?> call : mQueue) {
+            if (leastUrgent == null || MOST_URGENT_FIRST.compare(call, leastUrgent) > 0) {
+                leastUrgent = call;
+            }
+        }
+        return leastUrgent;
+    }
+
+    private void cancel(Call<?> call) {
+        boolean queued;
+        synchronized (this) {
+            if (call.mCancelled) {
+                return;
+            }
+            call.mCancelled = true;
+            queued = mQueue.remove(call);
+            // A post-process, writing the cache for example, is not aborted halfway
+            if (!queued && call.mThread != null && !call.mPostProcessing) {
+                // Wakes up waits for a connection or a backoff, and the blocked reads closing
+                // the connection does not reach. Both happen while the fetch still runs on the
+                // thread, it cannot move on to the next fetch while we hold the pipeline.
+                call.mThread.interrupt();
+                closeQuietly(call.mConnection);
+                call.mConnection = null;
+            }
+        }
+        if (queued) {
+            finish(call, null, null);
+        }
+    }
+
+    private static void closeQuietly(Closeable connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // The fetch fails either way
+        }
+    }
+
+    /**
+     * A fetch submitted to the pipeline.
+     */
+    public static final class Call<T> {
+        private final FetchPipeline mPipeline;
+        private final Stages<?, T> mStages;
+        private final Priority mPriority;
+        private final Callback<T> mCallback;
+        private long mSequence;
+
+        private volatile boolean mCancelled;
+
+        /** Guarded by the pipeline */
+        private Thread mThread;
+        private Closeable mConnection;
+        private boolean mPostProcessing;
+        private boolean mDone;
+        private T mResult;
+
+        /** Only touched by the thread running the fetch */
+        private long mBytesRead;
+
+        private Call(FetchPipeline pipeline, Stages<?, T> stages, Priority priority, Callback<T> callback) {
+            mPipeline = pipeline;
+            mStages = stages;
+            mPriority = priority;
+            mCallback = callback;
+        }
+
+        public Priority getPriority() {
+            return mPriority;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Stop the fetch. A waiting fetch never runs, one still reading its response has its
+         * connection closed and is not post-processed, one being post-processed completes.
+         * Unless its callback already ran, it is told {@link Callback#onCancelled()}.
+         */
+        public void cancel() {
+            mPipeline.cancel(this);
+        }
+
+        /**
+         * Throw if the fetch has been cancelled, call it between the steps of a stage.
+         */
+        public void throwIfCancelled() throws InterruptedIOException {
+            if (mCancelled) {
+                throw new InterruptedIOException("Fetch cancelled");
+            }
+        }
+
+        /**
+         * Close the given connection if the fetch is cancelled before
+         * {@link #detach(Closeable)}. If it already is, the connection is closed right away.
+         */
+        public void attach(Closeable connection) throws InterruptedIOException {
+            synchronized (mPipeline) {
+                if (!mCancelled) {
+                    mConnection = connection;
+                    return;
+                }
+            }
+            closeQuietly(connection);
+            throw new InterruptedIOException("Fetch cancelled");
+        }
+
+        /**
+         * Stop closing the given connection on a cancel, once it has been given back.
+         */
+        public void detach(Closeable connection) {
+            synchronized (mPipeline) {
+                if (mConnection == connection) {
+                    mConnection = null;
+                }
+            }
+        }
+
+        /**
+         * Return the number of body bytes read so far through {@link #read(InputStream)}.
+         * Only the stages of the fetch may call it.
+         */
+        public long getBytesRead() {
+            return mBytesRead;
+        }
+
+        /**
+         * Return the body, read so that every read fails once the fetch is cancelled.
+         */
+        public InputStream read(InputStream body) {
+            return new CancellableInputStream(body);
+        }
+
+        /**
+         * Wait until the fetch has ended.
+         *
+         * @return false if the timeout expired first
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (mPipeline) {
+                while (!mDone) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(mPipeline, remaining);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Return the result of a fetch that ended, or null if it failed or was cancelled.
+         */
+        public T getResult() {
+            synchronized (mPipeline) {
+                return mResult;
+            }
+        }
+
+        /**
+         * The body of a response, which stops being read once the fetch is cancelled.
+         */
+        private final class CancellableInputStream extends FilterInputStream {
+            CancellableInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                throwIfCancelled();
+                int value = super.read();
+                if (value != -1) {
+                    mBytesRead++;
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                throwIfCancelled();
+                int count = super.read(buffer, offset, length);
+                if (count > 0) {
+                    mBytesRead += count;
+                }
+                return count;
+            }
+        }
+    }
+}
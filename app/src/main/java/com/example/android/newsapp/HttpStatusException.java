@@ -0,0 +1,71 @@
+package com.example.android.newsapp;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Thrown when the server answers a request with an unexpected status code.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Value of {@link #getRetryAfterMillis()} when the server did not say when to retry */
+    public static final long NO_RETRY_AFTER = -1;
+
+    private final int mStatusCode;
+    private final long mRetryAfterMillis;
+
+    /**
+     * Constructs a new {@link HttpStatusException}.
+     *
+     * @param statusCode is the status code of the response
+     * @param retryAfterMillis is how long the server asked to wait before trying again,
+     *                         or {@link #NO_RETRY_AFTER}
+     */
+    public HttpStatusException(int statusCode, long retryAfterMillis) {
+        super("Error response code " + statusCode);
+        mStatusCode = statusCode;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    /**
+     * Return true if the same request may succeed later, which is the case for server errors
+     * and when the client has been rate limited.
+     */
+    public boolean isRetryable() {
+        return mStatusCode >= 500 || mStatusCode == 429 || mStatusCode == 408;
+    }
+
+    /**
+     * Return the milliseconds to wait according to a Retry-After header, which holds either
+     * a number of seconds or an HTTP date, or {@link #NO_RETRY_AFTER} if it cannot be read.
+     */
+    static long parseRetryAfter(String value, long now) {
+        if (value == null) {
+            return NO_RETRY_AFTER;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date
+        }
+        try {
+            SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return Math.max(0, httpDate.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return NO_RETRY_AFTER;
+        }
+    }
+}
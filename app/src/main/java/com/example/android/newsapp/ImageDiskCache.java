@@ -0,0 +1,153 @@
+package com.example.android.newsapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of downloaded pictures, one file per URL.
+ *
+ * Files are named after a digest of their URL, so two pictures never share a file. The least
+ * recently used files are deleted once the directory grows past its size limit.
+ */
+final class ImageDiskCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    /** Gives every download its own temporary file */
+    private final AtomicInteger mTempCounter = new AtomicInteger();
+
+    /**
+     * Constructs a new {@link ImageDiskCache}.
+     *
+     * @param directory where the pictures are stored
+     * @param maxBytes is the total size the pictures may take before the oldest are deleted
+     */
+    ImageDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return the file of the picture at the given URL, or null if it has not been stored.
+     */
+    synchronized File get(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+        // Touch the file so that eviction sees it as recently used
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Store the picture read from the stream for the given URL and return its file.
+     * The stream is read on the calling thread, other pictures are stored meanwhile.
+     */
+    File put(String url, InputStream in) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory);
+        }
+        // Write to a temporary file first so readers never see half a picture
+        File temp = new File(mDirectory, mTempCounter.incrementAndGet() + TEMP_SUFFIX);
+        OutputStream out = new FileOutputStream(temp);
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        } finally {
+            BufferPool.release(buffer);
+        }
+        out.close();
+
+        File file = fileFor(url);
+        synchronized (this) {
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Unable to rename " + temp);
+            }
+            trimToSize();
+        }
+        return file;
+    }
+
+    /**
+     * Delete the least recently used pictures until the cache fits into its size limit.
+     */
+    private void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxBytes) {
+            return;
+        }
+
+        List<File> byAge = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(byAge, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long left = a.lastModified();
+                long right = b.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        for (File file : byAge) {
+            if (size <= mMaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        return new File(mDirectory, nameFor(url));
+    }
+
+    /**
+     * Return a file name for the given URL, made of the hex digits of its digest.
+     */
+    static String nameFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(url.getBytes(Charset.forName("UTF-8")));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has MD5
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.example.android.newsapp;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the thumbnails of the news rows.
+ *
+ * Pictures are downloaded into an {@link ImageDiskCache} and decoded on background threads,
+ * sampled down to the size of their view and with two bytes per pixel. The most recently
+ * requested pictures are decoded first, so a fling does not wait for the rows it scrolled past.
+ * Decoded bitmaps are kept in a memory cache sized by bytes. A bitmap leaving that cache is
+ * decoded into again through the {@link BitmapPool} once no view shows it anymore.
+ *
+ * Everything but the download and the decoding happens on the main thread.
+ */
+public final class ImageLoader {
+
+    private static final String LOG_TAG = ImageLoader.class.getName();
+
+    private static final String DIRECTORY_NAME = "thumbnails";
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+    private static final int THREADS = 3;
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    private static ImageLoader sInstance;
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final BitmapPool mPool;
+    private final ImageDiskCache mDiskCache;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Request every view is waiting for */
+    private final Map<ImageView, Request> mRequests = new WeakHashMap<>();
+
+    /** Bitmap every view shows */
+    private final Map<ImageView, Bitmap> mBound = new WeakHashMap<>();
+
+    /** Number of views showing each bitmap, a bitmap is only reused when none does */
+    private final Map<Bitmap, Integer> mUseCounts = new IdentityHashMap<>();
+
+    /** Bitmaps that left the memory cache while a view was still showing them */
+    private final Map<Bitmap, Boolean> mEvicted = new IdentityHashMap<>();
+
+    /**
+     * Return the loader shared by the whole app.
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ImageLoader(Context context) {
+        // Take an eighth of the heap, a sixteenth on devices with little memory
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = activityManager.getMemoryClass();
+        int divisor = activityManager.isLowRamDevice() ? 16 : 8;
+        int cacheBytes = memoryClass * 1024 * 1024 / divisor;
+
+        mPool = new BitmapPool(cacheBytes / 4);
+        mMemoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldBitmap, Bitmap newBitmap) {
+                if (oldBitmap != newBitmap) {
+                    onRemovedFromCache(oldBitmap);
+                }
+            }
+        };
+        mDiskCache = new ImageDiskCache(new File(context.getCacheDir(), DIRECTORY_NAME), DISK_CACHE_BYTES);
+        mExecutor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LifoBlockingDeque(), new ImageThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Show the picture at the given URL in the view, decoded for the given size. The view is
+     * hidden when there is no URL. Must be called on the main thread.
+     */
+    public void load(String url, ImageView view, int width, int height) {
+        cancel(view);
+        if (url == null) {
+            view.setVisibility(View.GONE);
+            return;
+        }
+        view.setVisibility(View.VISIBLE);
+
+        String key = url + '@' + width + 'x' + height;
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            bind(view, cached);
+            return;
+        }
+
+        Request request = new Request(url, key, view, width, height);
+        mRequests.put(view, request);
+        request.mFuture = mExecutor.submit(request);
+    }
+
+    /**
+     * Stop loading a picture for the view and let go of the one it shows, when its row is
+     * recycled. Must be called on the main thread.
+     */
+    public void cancel(ImageView view) {
+        Request request = mRequests.remove(view);
+        if (request != null) {
+            request.mCancelled = true;
+            request.mFuture.cancel(false);
+        }
+        Bitmap bitmap = mBound.remove(view);
+        if (bitmap != null) {
+            view.setImageDrawable(null);
+            release(bitmap);
+        }
+    }
+
+    /**
+     * Give memory back to the system, see {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mMemoryCache.evictAll();
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    private void bind(ImageView view, Bitmap bitmap) {
+        mBound.put(view, bitmap);
+        Integer count = mUseCounts.get(bitmap);
+        mUseCounts.put(bitmap, count == null ? 1 : count + 1);
+        view.setImageBitmap(bitmap);
+    }
+
+    private void release(Bitmap bitmap) {
+        Integer count = mUseCounts.get(bitmap);
+        if (count == null || count <= 1) {
+            mUseCounts.remove(bitmap);
+            if (mEvicted.remove(bitmap) != null) {
+                mPool.put(bitmap);
+            }
+        } else {
+            mUseCounts.put(bitmap, count - 1);
+        }
+    }
+
+    private void onRemovedFromCache(Bitmap bitmap) {
+        if (mUseCounts.containsKey(bitmap)) {
+            // Still on screen, it is reused once its last view lets it go
+            mEvicted.put(bitmap, Boolean.TRUE);
+        } else {
+            mPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Hand the decoded bitmap to the view, unless the view asked for another picture since.
+     */
+    private void deliver(Request request, Bitmap bitmap) {
+        ImageView view = request.mView.get();
+        if (request.mCancelled || view == null || mRequests.get(view) != request) {
+            mPool.put(bitmap);
+            return;
+        }
+        mRequests.remove(view);
+        mMemoryCache.put(request.mKey, bitmap);
+        bind(view, bitmap);
+    }
+
+    /**
+     * Return the picture at the given URL from the disk cache, downloading it first if needed.
+     */
+    private File fetch(String url) throws IOException {
+        File file = mDiskCache.get(url);
+        if (file != null) {
+            return file;
+        }
+
+        // Thumbnails share their sockets, they all come from the same host
+        NewsHttpClient client = NewsHttpClient.getInstance();
+        HttpURLConnection urlConnection = client.open(new URL(url), TIMEOUT_MILLIS);
+        InputStream in = null;
+        boolean reusable = false;
+        try {
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                in = urlConnection.getErrorStream();
+                reusable = true;
+                throw new IOException("Error response code " + responseCode);
+            }
+            in = urlConnection.getInputStream();
+            File stored = mDiskCache.put(url, in);
+            reusable = true;
+            return stored;
+        } finally {
+            client.release(urlConnection, in, reusable);
+        }
+    }
+
+    /**
+     * Decode the picture in the file sampled down towards the given size, into a pooled
+     * bitmap when one fits. Return null if the file is not a picture.
+     */
+    private Bitmap decode(File file, int width, int height) {
+        String path = file.getPath();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        // Thumbnails are photos without transparency, two bytes per pixel are enough
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        options.inBitmap = mPool.get(sampledWidth * sampledHeight * 2);
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap did not fit after all, decode into a new one
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(path, options);
+        }
+    }
+
+    /**
+     * Return the largest power of two the picture can be divided by while staying at least
+     * as large as the view.
+     */
+    static int calculateInSampleSize(int pictureWidth, int pictureHeight, int width, int height) {
+        int sampleSize = 1;
+        while (pictureWidth / (sampleSize * 2) >= width && pictureHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Loads one picture for one view.
+     */
+    private final class Request implements Runnable {
+        final String mUrl;
+        final String mKey;
+        final WeakReference<ImageView> mView;
+        final int mWidth;
+        final int mHeight;
+        volatile boolean mCancelled;
+        Future<?> mFuture;
+
+        Request(String url, String key, ImageView view, int width, int height) {
+            mUrl = url;
+            mKey = key;
+            mView = new WeakReference<>(view);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            final Bitmap bitmap;
+            try {
+                File file = fetch(mUrl);
+                // The row may have scrolled away during the download
+                if (mCancelled) {
+                    return;
+                }
+                bitmap = decode(file, mWidth, mHeight);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Problem loading " + mUrl, e);
+                return;
+            } catch (OutOfMemoryError e) {
+                Log.w(LOG_TAG, "No memory left to decode " + mUrl);
+                return;
+            }
+            if (bitmap == null) {
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(Request.this, bitmap);
+                }
+            });
+        }
+    }
+
+    /**
+     * Hands out the most recently queued task first.
+     */
+    private static final class LifoBlockingDeque extends LinkedBlockingDeque<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    }
+
+    /**
+     * Creates the background threads of the loader, below the priority of the main thread.
+     */
+    private static final class ImageThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "news-image-" + mCount.incrementAndGet());
+        }
+    }
+}
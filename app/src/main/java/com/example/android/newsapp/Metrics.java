@@ -0,0 +1,249 @@
+package com.example.android.newsapp;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings of every stage between a Guardian query and the news on screen, kept in
+ * histograms so we can tell which stage makes a cold start slow.
+ *
+ * Recording is off unless it has been turned on, and then every call returns right after
+ * reading a flag. Turn it on with {@code adb shell setprop log.tag.NewsMetrics DEBUG} before
+ * starting the app, and read the numbers with
+ * {@code adb shell dumpsys activity com.example.android.newsapp/.NewsActivity}.
+ */
+public final class Metrics {
+
+    /** Tag checked with Log.isLoggable to decide whether metrics are recorded */
+    public static final String TAG = "NewsMetrics";
+
+    /** DNS lookup and connection set up of a query, together with the TLS handshake */
+    public static final int CONNECT = 0;
+    /** From the connection being ready to the response headers, the time to first byte */
+    public static final int FIRST_BYTE = 1;
+    /** Time spent waiting for the body on the network */
+    public static final int BODY_READ = 2;
+    /** Time spent decoding and parsing the body, without the network waits */
+    public static final int PARSE = 3;
+    /** Number of news in a response, this one is not a time */
+    public static final int ITEM_COUNT = 4;
+    /** Whole background work of the loader, from the cache or the network to formatted rows */
+    public static final int LOAD = 5;
+    /** Binding of one row by the adapter */
+    public static final int BIND = 6;
+    /** From the loader delivering news to the next frame being drawn */
+    public static final int FIRST_FRAME = 7;
+    /** From the activity being created to the first frame drawn from the feed snapshot */
+    public static final int SNAPSHOT_FRAME = 8;
+    /** From the activity being created to its first frame, whatever it shows */
+    public static final int INITIAL_DISPLAY = 9;
+    /** From a tap on a saved article to the first frame drawn with its body */
+    public static final int ARTICLE_DISPLAY = 10;
+
+    private static final String[] STAGE_NAMES = {
+            "connect", "first_byte", "body_read", "parse", "item_count", "load", "bind", "first_frame",
+            "snapshot_frame", "initial_display", "article_display"
+    };
+    private static final int STAGE_COUNT = STAGE_NAMES.length;
+
+    /** Bucket i counts the values below 2^i and from 2^(i-1), bucket 0 counts zeros */
+    private static final int BUCKET_COUNT = 32;
+
+    private static volatile boolean sEnabled;
+
+    private static final AtomicLongArray sBuckets = new AtomicLongArray(STAGE_COUNT * BUCKET_COUNT);
+    private static final AtomicLongArray sCounts = new AtomicLongArray(STAGE_COUNT);
+    private static final AtomicLongArray sSums = new AtomicLongArray(STAGE_COUNT);
+    private static final AtomicLongArray sMaxima = new AtomicLongArray(STAGE_COUNT);
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Return the start time of a stage to pass to {@link #stop(int, long)}, or 0 when
+     * metrics are off.
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since the given start time for the stage. Does nothing if the stage was
+     * started while metrics were off.
+     */
+    public static void stop(int stage, long startNanos) {
+        if (startNanos != 0) {
+            record(stage, (System.nanoTime() - startNanos) / 1000);
+        }
+    }
+
+    /**
+     * Record a value that is not a time, such as {@link #ITEM_COUNT}.
+     */
+    public static void count(int stage, long value) {
+        if (sEnabled) {
+            record(stage, value);
+        }
+    }
+
+    /**
+     * Return the given response body, wrapped so the time spent waiting in its reads is
+     * measured when metrics are on.
+     */
+    static InputStream timeReads(InputStream body) {
+        return sEnabled ? new TimedInputStream(body) : body;
+    }
+
+    /**
+     * Record the parsing of a body that started at the given time. The time the body spent
+     * on the network, measured if it was wrapped by {@link #timeReads(InputStream)}, is
+     * recorded as {@link #BODY_READ} and the rest as {@link #PARSE}.
+     */
+    static void stopParse(long startNanos, InputStream body) {
+        if (startNanos == 0) {
+            return;
+        }
+        long totalMicros = (System.nanoTime() - startNanos) / 1000;
+        long readMicros = body instanceof TimedInputStream
+                ? ((TimedInputStream) body).mReadNanos / 1000 : 0;
+        record(BODY_READ, readMicros);
+        record(PARSE, Math.max(0, totalMicros - readMicros));
+    }
+
+    /**
+     * Record the time from the given start to the next frame of the window that holds the view.
+     */
+    public static void stopAtNextFrame(final int stage, final long startNanos, final View view) {
+        if (startNanos == 0) {
+            return;
+        }
+        final ViewTreeObserver observer = view.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // The observer may have been replaced while the view was attached
+                ViewTreeObserver current = observer.isAlive() ? observer : view.getViewTreeObserver();
+                current.removeOnPreDrawListener(this);
+                stop(stage, startNanos);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Forget everything that has been recorded.
+     */
+    public static void reset() {
+        for (int i = 0; i < sBuckets.length(); i++) {
+            sBuckets.set(i, 0);
+        }
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            sCounts.set(stage, 0);
+            sSums.set(stage, 0);
+            sMaxima.set(stage, 0);
+        }
+    }
+
+    /**
+     * Write a table of every stage with its count, mean, percentiles and maximum.
+     * Times are in microseconds.
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("News metrics, " + (sEnabled ? "enabled" : "disabled") + ", times in us");
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "  %-16s %8s %10s %10s %10s %10s %10s",
+                "stage", "count", "mean", "p50", "p90", "p99", "max"));
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            long count = sCounts.get(stage);
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "  %-16s %8d %10d %10d %10d %10d %10d",
+                    STAGE_NAMES[stage], count, count == 0 ? 0 : sSums.get(stage) / count,
+                    percentile(stage, 0.5), percentile(stage, 0.9), percentile(stage, 0.99),
+                    sMaxima.get(stage)));
+        }
+    }
+
+    /**
+     * Return the upper bound of the bucket holding the given fraction of the values of the
+     * stage, but never more than the largest value recorded.
+     */
+    static long percentile(int stage, double fraction) {
+        long count = sCounts.get(stage);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += sBuckets.get(stage * BUCKET_COUNT + bucket);
+            if (seen >= rank) {
+                long upperBound = bucket == 0 ? 0 : (1L << bucket) - 1;
+                return Math.min(upperBound, sMaxima.get(stage));
+            }
+        }
+        return sMaxima.get(stage);
+    }
+
+    static long getCount(int stage) {
+        return sCounts.get(stage);
+    }
+
+    private static void record(int stage, long value) {
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+        sBuckets.incrementAndGet(stage * BUCKET_COUNT + bucket);
+        sCounts.incrementAndGet(stage);
+        sSums.addAndGet(stage, value);
+        long max;
+        do {
+            max = sMaxima.get(stage);
+        } while (value > max && !sMaxima.compareAndSet(stage, max, value));
+    }
+
+    /**
+     * Adds up the time spent in the reads of a stream.
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+        /** Only read by the thread doing the reads */
+        long mReadNanos;
+
+        TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                mReadNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                mReadNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -1,12 +1,27 @@
 package com.example.android.newsapp;
 
+import android.os.Parcel;
+import android.os.Parcelable;
 
-public class News {
-    private String NewsTitle;
-    private String NewsSection;
-    private String NewsAuthor;
-    private String NewsDate;
-    private String NewsUrl;
+
+/**
+ * An immutable news article.
+ *
+ * Sections and authors repeat across thousands of articles, so they are shared through the
+ * {@link StringPool}. The publication date is kept as epoch milliseconds instead of its ISO
+ * text. Two news are equal when they have the same URL.
+ */
+public final class News implements Parcelable {
+
+    /** Publication time of a news whose date is missing or could not be read */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private final String NewsTitle;
+    private final String NewsSection;
+    private final String NewsAuthor;
+    private final long NewsDate;
+    private final String NewsUrl;
+    private final String NewsThumbnail;
 
     /// Constructor of news object
     /**
@@ -15,15 +30,44 @@ public class News {
      * @param title is the title of news
      * @param section is the news category
      * @param author is the author's name
-     * @param date is when the news was published
+     * @param date is when the news was published, as an ISO 8601 UTC date such as
+     *             2018-08-25T10:00:00Z
      * @param url is the website URL to find more details about the news
      */
     public News(String title, String section, String author, String date, String url){
+        this(title, section, author, parseDate(date), url);
+    }
+
+    /**
+     * Constructs a new {@link News} object.
+     *
+     * @param title is the title of news
+     * @param section is the news category
+     * @param author is the author's name
+     * @param date is when the news was published, in milliseconds since the epoch
+     * @param url is the website URL to find more details about the news
+     */
+    public News(String title, String section, String author, long date, String url){
+        this(title, section, author, date, url, null);
+    }
+
+    /**
+     * Constructs a new {@link News} object.
+     *
+     * @param title is the title of news
+     * @param section is the news category
+     * @param author is the author's name
+     * @param date is when the news was published, in milliseconds since the epoch
+     * @param url is the website URL to find more details about the news
+     * @param thumbnail is the URL of the picture of the news, or null if it has none
+     */
+    public News(String title, String section, String author, long date, String url, String thumbnail){
         NewsTitle = title;
-        NewsSection = section;
-        NewsAuthor = author;
+        NewsSection = StringPool.intern(section);
+        NewsAuthor = StringPool.intern(author);
         NewsDate = date;
         NewsUrl = url;
+        NewsThumbnail = thumbnail;
     }
 
     // Public getter methods so that each data type is returned
@@ -40,11 +84,113 @@ public class News {
         return NewsAuthor;
     }
 
-    public String getNewsDate(){
+    /**
+     * Return when the news was published in milliseconds since the epoch,
+     * or {@link #NO_DATE} if that is unknown.
+     */
+    public long getNewsDate(){
         return NewsDate;
     }
 
     public String getNewsUrl(){
         return NewsUrl;
     }
+
+    /**
+     * Return the URL of the picture of the news, or null if it has none.
+     */
+    public String getThumbnailUrl(){
+        return NewsThumbnail;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof News)) {
+            return false;
+        }
+        String otherUrl = ((News) other).NewsUrl;
+        return NewsUrl == null ? otherUrl == null : NewsUrl.equals(otherUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return NewsUrl == null ? 0 : NewsUrl.hashCode();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(NewsTitle);
+        dest.writeString(NewsSection);
+        dest.writeString(NewsAuthor);
+        dest.writeLong(NewsDate);
+        dest.writeString(NewsUrl);
+        dest.writeString(NewsThumbnail);
+    }
+
+    public static final Creator<News> CREATOR = new Creator<News>() {
+        @Override
+        public News createFromParcel(Parcel source) {
+            return new News(source.readString(), source.readString(), source.readString(),
+                    source.readLong(), source.readString(), source.readString());
+        }
+
+        @Override
+        public News[] newArray(int size) {
+            return new News[size];
+        }
+    };
+
+    /**
+     * Return the milliseconds since the epoch of an ISO 8601 UTC date such as
+     * 2018-08-25T10:00:00Z, or {@link #NO_DATE} if the text is not such a date.
+     *
+     * Fractions of a second are ignored. This avoids a date formatter, which is neither cheap
+     * to create nor safe to share between the threads that build news.
+     */
+    static long parseDate(String date) {
+        if (date == null || date.length() < 19 || date.charAt(4) != '-' || date.charAt(7) != '-'
+                || date.charAt(10) != 'T' || date.charAt(13) != ':' || date.charAt(16) != ':') {
+            return NO_DATE;
+        }
+        int year = parseDigits(date, 0, 4);
+        int month = parseDigits(date, 5, 7);
+        int day = parseDigits(date, 8, 10);
+        int hour = parseDigits(date, 11, 13);
+        int minute = parseDigits(date, 14, 16);
+        int second = parseDigits(date, 17, 19);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return NO_DATE;
+        }
+
+        // Days since 1970-01-01 in the proleptic Gregorian calendar
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+    }
+
+    private static int parseDigits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
 }
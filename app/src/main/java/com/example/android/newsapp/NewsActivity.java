@@ -17,40 +17,85 @@ package com.example.android.newsapp;
 
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.Loader;
-import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Trace;
 import android.preference.PreferenceManager;
+import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
+import android.widget.Toast;
 import com.example.ola.newsapp1.R;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<List<News>> {
+public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<NewsRepository.Feed> {
 
     /** Adapter for the list of news */
     private NewsAdapter mAdapter;
 
 
     private static final int NEWS_LOADER_ID = 1;
+
+    /** Loader asking the server for a search the local index has too few results for */
+    private static final int SEARCH_LOADER_ID = 2;
+
+    /** Key of the search URL in the arguments of the search loader */
+    private static final String SEARCH_URL_KEY = "search_url";
+
+    /** The server is searched too when the local index finds fewer news than this */
+    private static final int MIN_LOCAL_RESULTS = 5;
+
+    /** Largest number of local results shown */
+    private static final int MAX_SEARCH_RESULTS = 100;
+
+    /** The server is only searched once the user stopped typing for this long */
+    private static final long REMOTE_SEARCH_DELAY_MILLIS = 600;
+
+    /** The next page is requested when fewer rows than this are left below the screen */
+    private static final int PREFETCH_DISTANCE = 5;
+
+    /** Key of the news saved with the state of the activity */
+    private static final String STATE_NEWS_KEY = "news";
+
+    /** Largest number of news saved with the state, the state must stay small */
+    private static final int MAX_SAVED_NEWS = 100;
+
+    /** File of the rows painted at a cold start, before the loader delivers */
+    private static final String SNAPSHOT_FILE_NAME = "feed.snapshot";
+
+    /** Runs the disk and system work of the activity off the main thread, one task at a time */
+    private static final Executor BACKGROUND_EXECUTOR = Executors.newSingleThreadExecutor();
     public static final String LOG_TAG = NewsActivity.class.getName();
-    private static final String GUARDIAN_REQUEST_URL =
-           "http://content.guardianapis.com/search?order-by=newest&show-tags=contributor&page-size=20&q=politics&api-key=6f2b2fc3-131e-4731-8fbb-dd514a95c728";
+
+    /** Query of the feed for the settings it was loaded with */
+    private NewsQuery mQuery;
 
     /** TextView that is displayed when the list is empty */
     private TextView mEmptyStateTextView;
@@ -58,154 +103,651 @@ public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<L
     /** Message for the user */
     private String mMessageForTheUser;
 
+    /** Whether there is a network connection, kept up to date while the activity is started */
+    private boolean mIsConnected;
+
+    /** Tells the user how old the news are when they could not be refreshed */
+    private TextView mStalenessView;
+
+    /** Feed delivered last by the news loader */
+    private NewsRepository.Feed mFeed;
+
+    /** Whether the first frame has been drawn and the rest of the start up has been done */
+    private boolean mStartupFinished;
+
+    /** Whether the activity has been stopped since it was created, the settings can only have changed then */
+    private boolean mStopped;
+
+    /** Whether the system has been told that the rows of the feed are on screen */
+    private boolean mFullyDrawnReported;
+
+    /**
+     * Query, age and news URLs of the rows written to the snapshot last, so the same rows are
+     * not written again. Only touched on the {@link #BACKGROUND_EXECUTOR}.
+     */
+    private String mSnapshotRows;
+
+    /** Refreshes the news when the connection comes back */
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            boolean wasConnected = mIsConnected;
+            mIsConnected = isConnected();
+            if (mIsConnected && !wasConnected && mFeed != null
+                    && (mFeed.hasRefreshFailed() || mFeed.isStale(System.currentTimeMillis()))) {
+                Loader<NewsRepository.Feed> loader = getLoaderManager().getLoader(NEWS_LOADER_ID);
+                if (loader instanceof NewsLoader) {
+                    ((NewsLoader) loader).refresh();
+                }
+            }
+        }
+    };
+
+    /** List of news, the first frame drawn after a load is timed on it */
+    private RecyclerView mNewsListView;
+
+    /** Lets the user pull the list down to fetch the latest news */
+    private SwipeRefreshLayout mSwipeRefreshLayout;
+
+    /** News of the feed, shown again when the search is closed */
+    private List<News> mFeedNews;
+
+    /** Current search, or null when the feed is shown */
+    private String mSearchQuery;
+
+    /** Local results of the current search, remote results are added after them */
+    private List<News> mLocalResults;
+
+    private final Handler mSearchHandler = new Handler();
+
+    /** Asks the server for the current search */
+    private final Runnable mRemoteSearch = new Runnable() {
+        @Override
+        public void run() {
+            Bundle args = new Bundle();
+            args.putString(SEARCH_URL_KEY, mQuery.withSearchTerms(mSearchQuery).toUrl());
+            getLoaderManager().restartLoader(SEARCH_LOADER_ID, args, NewsActivity.this);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStart = System.nanoTime();
+        // The phases of the start up are shown by systrace and the profilers
+        Trace.beginSection("NewsActivity.onCreate");
+        // The settings are read from disk on a thread of their own while the layout is inflated
+        PreferenceManager.getDefaultSharedPreferences(this);
         super.onCreate(savedInstanceState);
         //setContentView(R.layout.news_list_item);
 
+        // Record the timings of the app when asked to with adb shell setprop log.tag.NewsMetrics DEBUG
+        Metrics.setEnabled(Log.isLoggable(Metrics.TAG, Log.DEBUG));
 
+        Trace.beginSection("setContentView");
         setContentView(R.layout.list_item);
-        // Find a reference to the {@link ListView} in the layout
-        ListView newsListView = (ListView) findViewById(R.id.list);
+        Trace.endSection();
+        // Find a reference to the {@link RecyclerView} in the layout
+        mNewsListView = findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        mNewsListView.setLayoutManager(layoutManager);
+        mNewsListView.setHasFixedSize(true);
 
         // No news have been found. Display this information on the screen
         mEmptyStateTextView = findViewById(R.id.empty_view);
-        newsListView.setEmptyView(mEmptyStateTextView);
+        mStalenessView = findViewById(R.id.staleness_view);
+
+        // Create a new adapter that starts with an empty list of news. A click on a row
+        // sends an intent to a web browser to open a website with more information about the news.
+        mAdapter = new NewsAdapter(this, new NewsAdapter.OnNewsClickListener() {
+            @Override
+            public void onNewsClick(News news) {
+                openNews(news);
+            }
+        });
+
+        // The empty view is only visible when the list has no items
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
 
-        // Create a new adapter that takes an empty list of news as input
-        mAdapter = new NewsAdapter(this, new ArrayList<News>());
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
 
-        // Set the adapter on the {@link ListView}
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
-        newsListView.setAdapter(mAdapter);
+        mNewsListView.setAdapter(mAdapter);
+        // Inflate the rows of the first screen in the background until the first layout
+        mAdapter.prefetchRows(mNewsListView, getFirstScreenRowCount());
+
+        // Show the news that were on screen before the activity was recreated, also after the
+        // process was killed. They are in the list before its first layout, so the list
+        // restores its own scroll position.
+        if (savedInstanceState != null) {
+            restoreNews(savedInstanceState);
+        }
+
+        // Fetch the next page in the background while the user scrolls towards the end of the list
+        mNewsListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // The rows the user stopped at are the ones likely to be opened
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    warmUpVisibleNews();
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = mAdapter.getItemCount();
+                // Search results are not paged
+                if (mSearchQuery == null && totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - PREFETCH_DISTANCE) {
+                    Loader<NewsRepository.Feed> loader = getLoaderManager().getLoader(NEWS_LOADER_ID);
+                    if (loader instanceof NewsLoader) {
+                        ((NewsLoader) loader).loadNextPage();
+                    }
+                }
+            }
+        });
+
+        // Fetch only the news published since the newest one shown when the list is pulled down
+        mSwipeRefreshLayout = findViewById(R.id.swipe_refresh);
+        mSwipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
+            @Override
+            public void onRefresh() {
+                Loader<NewsRepository.Feed> loader = getLoaderManager().getLoader(NEWS_LOADER_ID);
+                // The indicator is stopped when the refreshed news are delivered
+                if (mSearchQuery != null || !(loader instanceof NewsLoader)
+                        || !((NewsLoader) loader).refresh()) {
+                    mSwipeRefreshLayout.setRefreshing(false);
+                }
+            }
+        });
+
+        // Build the query of the feed from the settings. The network connection is only
+        // checked in onStart, it is not needed before the loader delivers.
+        mQuery = NewsQuery.fromPreferences(this);
+
+        // Paint the rows shown last right away at a cold start, the loader replaces them
+        if (savedInstanceState == null) {
+            Trace.beginSection("showSnapshot");
+            showSnapshot(createStart);
+            Trace.endSection();
+        }
+
+        // Get a reference to the LoaderManager, in order to interact with loaders.
+        LoaderManager loaderManager = getLoaderManager();
+
+        // Initialize the loader. Pass in the int ID constant defined above and pass in null for
+        // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
+        // because this activity implements the LoaderCallbacks interface).
+        loaderManager.initLoader(NEWS_LOADER_ID, null, this);
+
+        // Everything the first frame does not need waits until it is drawn
+        Metrics.stopAtNextFrame(Metrics.INITIAL_DISPLAY, Metrics.isEnabled() ? createStart : 0,
+                mNewsListView);
+        finishStartupAfterFirstFrame();
+        Trace.endSection();
+    }
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected earthquake.
-        newsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+    /**
+     * Call {@link #finishStartup()} once the first frame of the activity has been drawn.
+     */
+    private void finishStartupAfterFirstFrame() {
+        mNewsListView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                // Find the current News that was clicked on
-                News currentNews = mAdapter.getItem(position);
+            public boolean onPreDraw() {
+                mNewsListView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Runs after the frame that is about to be drawn
+                mNewsListView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishStartup();
+                    }
+                });
+                return true;
+            }
+        });
+    }
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                assert currentNews != null;
-                Uri newsUri = Uri.parse(currentNews.getNewsUrl());
+    /**
+     * Do the work of the start up that the first frame does not need.
+     */
+    private void finishStartup() {
+        if (isFinishing()) {
+            return;
+        }
+        mStartupFinished = true;
+        // The options menu and its search view are only built now
+        invalidateOptionsMenu();
+        // Keep the cached news up to date while the app is not running. Looking up the
+        // scheduled jobs is a call into the system, so it is made in the background.
+        final Context applicationContext = getApplicationContext();
+        BACKGROUND_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                NewsSyncJobService.schedule(applicationContext);
+            }
+        });
+    }
 
-                // Create a new intent to view the news URI
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, newsUri);
+    /**
+     * Return the number of rows that fill the screen. A row is at least as high as its
+     * thumbnail and padding.
+     */
+    private int getFirstScreenRowCount() {
+        int minRowHeight = getResources().getDimensionPixelSize(R.dimen.thumbnail_height)
+                + 2 * getResources().getDimensionPixelSize(R.dimen.dp18);
+        return getResources().getDisplayMetrics().heightPixels / minRowHeight + 1;
+    }
 
-                // Check if there is any web browser available. If there is not, display toast message
-                PackageManager packageManager = getPackageManager();
-                List<ResolveInfo> activities = packageManager.queryIntentActivities(websiteIntent,
-                        PackageManager.MATCH_DEFAULT_ONLY);
+    /**
+     * Tell the system once that the rows of the feed are on screen, which ends the time to
+     * full display of the start up.
+     */
+    private void reportRowsShown() {
+        if (mFullyDrawnReported) {
+            return;
+        }
+        mFullyDrawnReported = true;
+        // KitKat requires a permission apps cannot have
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            reportFullyDrawn();
+        }
+    }
 
-                boolean isIntentSafe = activities.size() > 0;
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Find out when the connection is lost or comes back while the news are on screen
+        mIsConnected = isConnected();
+        registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        // Keep a browser ready to show the news the user taps
+        BrowserLauncher.getInstance(this).bind(this);
+        // Coming back from the settings, reload only if they changed the news that are asked for.
+        // Settings used before are served from the cache by the new loader. Right after
+        // onCreate they were just read.
+        if (mStopped) {
+            NewsQuery query = NewsQuery.fromPreferences(this);
+            if (!query.equals(mQuery)) {
+                Log.d(LOG_TAG, "Query changed to " + query);
+                mQuery = query;
+                getLoaderManager().restartLoader(NEWS_LOADER_ID, null, this);
+            }
+        }
+    }
 
-                if (isIntentSafe) {
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        // Only the rows up to the screen and a few below are needed to restore the list
+        List<News> news = mFeedNews;
+        if (news != null && !news.isEmpty()) {
+            int lastVisible = ((LinearLayoutManager) mNewsListView.getLayoutManager())
+                    .findLastVisibleItemPosition();
+            int count = Math.min(news.size(),
+                    Math.min(MAX_SAVED_NEWS, Math.max(lastVisible, 0) + PREFETCH_DISTANCE + 1));
+            outState.putParcelableArrayList(STATE_NEWS_KEY, new ArrayList<>(news.subList(0, count)));
+        }
+    }
 
-                    // Start the intent
-                    startActivity(websiteIntent);
+    /**
+     * Show the rows of the feed snapshot, if it was written for the current query, until the
+     * loader delivers.
+     *
+     * @param createStart is when the activity started being created, in nanoseconds
+     */
+    private void showSnapshot(long createStart) {
+        FeedSnapshot snapshot = FeedSnapshot.open(new File(getCacheDir(), SNAPSHOT_FILE_NAME));
+        if (snapshot == null || !mQuery.getKey().equals(snapshot.getQueryKey())) {
+            return;
+        }
+        List<News> rows = snapshot.getNews();
+        if (rows.isEmpty()) {
+            return;
+        }
+        mFeedNews = rows;
+        mAdapter.submitSnapshot(rows);
+        findViewById(R.id.progress_bar).setVisibility(View.GONE);
+        reportRowsShown();
+        Metrics.stopAtNextFrame(Metrics.SNAPSHOT_FRAME, Metrics.isEnabled() ? createStart : 0,
+                mNewsListView);
+    }
 
-                } else {
-                    // Update an empty state with no internet connection error message
-                    mMessageForTheUser = (String) getText(R.string.no_webbrowser);
-                    mEmptyStateTextView.setText(mMessageForTheUser);
+    /**
+     * Write the first rows of the feed to the snapshot in the background, unless they are the
+     * ones written last. Most deliveries only tell that a refresh started or a page was added.
+     */
+    private void writeSnapshot(NewsRepository.Feed feed) {
+        final List<News> news = feed.getNews();
+        if (news.isEmpty()) {
+            return;
+        }
+        final File file = new File(getCacheDir(), SNAPSHOT_FILE_NAME);
+        final String queryKey = mQuery.getKey();
+        final long savedAt = feed.getSavedAt();
+        BACKGROUND_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<News> rows = news.subList(0, Math.min(news.size(), FeedSnapshot.MAX_ROWS));
+                StringBuilder written = new StringBuilder(queryKey).append('\n').append(savedAt);
+                for (News row : rows) {
+                    written.append('\n').append(row.getNewsUrl());
+                }
+                if (written.toString().equals(mSnapshotRows)) {
+                    return;
+                }
+                try {
+                    FeedSnapshot.write(file, queryKey, savedAt, rows);
+                    mSnapshotRows = written.toString();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem writing the feed snapshot", e);
                 }
             }
+        });
+    }
 
-            });
+    /**
+     * Show the news saved by {@link #onSaveInstanceState(Bundle)} until the loader delivers.
+     */
+    private void restoreNews(Bundle savedInstanceState) {
+        ArrayList<News> news = savedInstanceState.getParcelableArrayList(STATE_NEWS_KEY);
+        if (news == null || news.isEmpty()) {
+            return;
+        }
+        mFeedNews = news;
+        // In the list before its first layout, and there are few enough rows to build their
+        // texts when they are bound
+        mAdapter.submitSnapshot(news);
+        findViewById(R.id.progress_bar).setVisibility(View.GONE);
+    }
+
+    @Override
+    protected void onStop() {
+        unregisterReceiver(mConnectivityReceiver);
+        BrowserLauncher.getInstance(this).unbind(this);
+        mStopped = true;
+        super.onStop();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Decoded thumbnails are the largest thing we keep in memory
+        ImageLoader.getInstance(this).trimMemory(level);
+    }
+
+    @Override
+    protected void onDestroy() {
+        // Do not start a remote search for an activity that is gone
+        mSearchHandler.removeCallbacks(mRemoteSearch);
+        super.onDestroy();
+    }
 
+    /**
+     * Return true if the device has a network connection.
+     */
+    private boolean isConnected() {
         // Get a reference to the ConnectivityManager to check state of network connectivity
         ConnectivityManager connMgr = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
 
         // Get details on the currently active default data network
-        assert connMgr != null;
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        NetworkInfo networkInfo = connMgr == null ? null : connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
 
-        // If there is a network connection, fetch data
-        if(networkInfo != null && networkInfo.isConnected()){
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
+    /**
+     * Open the saved body of the given news in the reader, or its website in a web browser.
+     */
+    private void openNews(News currentNews) {
+        // Saved bodies are read in the app, offline and without loading the page
+        if (ArticleStore.getInstance(this).contains(currentNews.getNewsUrl())) {
+            startActivity(ReaderActivity.newIntent(this, currentNews, Metrics.start()));
+            return;
+        }
+        // The browsers have been looked up in the background, so the tap does not wait for it
+        if (!BrowserLauncher.getInstance(this).open(this, currentNews.getNewsUrl())) {
+            // The list is on screen, so tell the user with a toast instead of the empty state
+            Toast.makeText(this, R.string.no_webbrowser, Toast.LENGTH_LONG).show();
+        }
+    }
 
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
+    /**
+     * Let the browser connect to the news on screen before one of them is tapped, and save
+     * the bodies of these news and of the next ones below for the reader.
+     */
+    private void warmUpVisibleNews() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mNewsListView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        List<String> urls = new ArrayList<>();
+        List<String> likelyUrls = new ArrayList<>();
+        for (int position = first; position <= last + PREFETCH_DISTANCE
+                && position < mAdapter.getItemCount(); position++) {
+            String url = mAdapter.getItem(position).getNewsUrl();
+            if (url != null) {
+                if (position <= last) {
+                    urls.add(url);
+                }
+                likelyUrls.add(url);
+            }
+        }
+        BrowserLauncher.getInstance(this).mayLaunch(urls);
+        // Whether the settings and the network allow it is checked in the background
+        ArticlePrefetcher.getInstance(this).prefetch(likelyUrls, FetchPipeline.Priority.PREFETCH);
+    }
 
-            loaderManager.initLoader(NEWS_LOADER_ID, null, this);
-        } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View progressBar = findViewById(R.id.progress_bar);
-            progressBar.setVisibility(View.GONE);
-            // Update an empty state with no internet connection error message
-            mMessageForTheUser = (String) getText(R.string.no_internet);
-            mEmptyStateTextView.setText(mMessageForTheUser);
+    /**
+     * Show the news of the local index matching the query right away, and ask the server too
+     * when there are only a few of them. An empty query shows the feed again.
+     */
+    private void search(String query) {
+        mSearchHandler.removeCallbacks(mRemoteSearch);
+        // Results of an earlier query must not be shown anymore
+        getLoaderManager().destroyLoader(SEARCH_LOADER_ID);
+
+        String trimmed = query == null ? "" : query.trim();
+        if (trimmed.isEmpty()) {
+            if (mSearchQuery != null) {
+                mSearchQuery = null;
+                mLocalResults = null;
+                mEmptyStateTextView.setText(mMessageForTheUser);
+                mAdapter.submitList(mFeedNews);
+            }
+            return;
         }
 
+        mSearchQuery = trimmed;
+        mLocalResults = SearchIndex.getInstance().search(trimmed, MAX_SEARCH_RESULTS);
+        mEmptyStateTextView.setText(R.string.no_search_results);
+        mAdapter.submitList(mLocalResults);
+        if (mLocalResults.size() < MIN_LOCAL_RESULTS && mIsConnected) {
+            mSearchHandler.postDelayed(mRemoteSearch, REMOTE_SEARCH_DELAY_MILLIS);
+        }
     }
 
-    @Override
-    public Loader<List<News>> onCreateLoader(int i, Bundle bundle) {
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-        String minMagnitude = sharedPrefs.getString(
-                getString(R.string.settings_min_magnitude_key),
-                getString(R.string.settings_min_magnitude_default));
+    /**
+     * Return the local results followed by the remote ones that are not among them.
+     */
+    private static List<News> mergeSearchResults(List<News> local, List<News> remote) {
+        List<News> merged = new ArrayList<>(local);
+        Set<News> seen = new HashSet<>(local);
+        for (News news : remote) {
+            if (seen.add(news)) {
+                merged.add(news);
+            }
+        }
+        return merged;
+    }
 
-        String orderBy = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default)
-        );
-      //  Uri baseUri = Uri.parse(GUARDIAN_REQUEST_URL);
-      //  Uri.Builder uriBuilder = baseUri.buildUpon();
+    /**
+     * Show the empty state text only while the list has no items.
+     */
+    private void updateEmptyView() {
+        mEmptyStateTextView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
 
-     //   uriBuilder.appendQueryParameter("format", "geojson");
-  //      uriBuilder.appendQueryParameter("limit", "10");
- //       uriBuilder.appendQueryParameter("minmag", minMagnitude);
-//        uriBuilder.appendQueryParameter("orderby", orderBy);
+    /**
+     * Tell the user how old the shown news are when they could not be brought up to date.
+     */
+    private void updateStalenessView(NewsRepository.Feed feed) {
+        long now = System.currentTimeMillis();
+        boolean outdated = feed.hasRefreshFailed() || (!feed.isRefreshing() && feed.isStale(now));
+        if (feed.getNews().isEmpty() || !outdated) {
+            mStalenessView.setVisibility(View.GONE);
+            return;
+        }
+        CharSequence age = DateUtils.getRelativeTimeSpanString(feed.getSavedAt(), now,
+                DateUtils.MINUTE_IN_MILLIS);
+        mStalenessView.setText(getString(mIsConnected ? R.string.stale_news : R.string.offline_news, age));
+        mStalenessView.setVisibility(View.VISIBLE);
+    }
 
-    //    return new NewsLoader(this, uriBuilder.toString());
+    @Override
+    public Loader<NewsRepository.Feed> onCreateLoader(int i, Bundle bundle) {
+        if (i == SEARCH_LOADER_ID) {
+            return new NewsLoader(this, bundle.getString(SEARCH_URL_KEY));
+        }
 
-        Log.e(LOG_TAG, "Loader created");
-        // Create a new loader for the given URL
-        return new NewsLoader(this, GUARDIAN_REQUEST_URL);
+        Log.d(LOG_TAG, "Loader created");
+        // Create a new loader for the query of the current settings
+        return new NewsLoader(this, mQuery.toUrl());
     }
 
     @Override
-    public void onLoadFinished(Loader<List<News>> loader, List<News> news) {
-        // Hide loading indicator because the data has been loaded
+    public void onLoadFinished(Loader<NewsRepository.Feed> loader, NewsRepository.Feed feed) {
+        if (loader.getId() == SEARCH_LOADER_ID) {
+            // The loader of an earlier query is destroyed, so these results are current
+            if (mSearchQuery != null && feed != null) {
+                mAdapter.submitList(mergeSearchResults(mLocalResults, feed.getNews()));
+            }
+            return;
+        }
+        if (feed == null) {
+            return;
+        }
+        mFeed = feed;
+        List<News> news = feed.getNews();
+        if (news.isEmpty() && feed.getSavedAt() == 0 && mFeedNews != null) {
+            // Nothing stored anymore, keep the news restored with the state of the activity
+            news = mFeedNews;
+        }
+
+        // Keep the loading indicator until there is something to show or the server answered
         View progressBar = findViewById(R.id.progress_bar);
-        progressBar.setVisibility(View.GONE);
+        progressBar.setVisibility(news.isEmpty() && feed.isRefreshing() ? View.VISIBLE : View.GONE);
 
-        // Clear the adapter of previous news data
-        mAdapter.clear();
+        if (!feed.isRefreshing()) {
+            mSwipeRefreshLayout.setRefreshing(false);
+        }
+        updateStalenessView(feed);
+        // The next cold start paints these news before anything else
+        writeSnapshot(feed);
+
+        // Keep the feed up to date while searching, it is shown again when the search is closed
+        mFeedNews = news;
+        if (mSearchQuery != null) {
+            return;
+        }
 
         // If there is a valid list of {@link News}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update
-        if(news != null && !news.isEmpty()){
-            Log.e(LOG_TAG, "Loader load finished");
-            mAdapter.addAll(news);
-
-            if (news.isEmpty()) {
-                // Set empty state text to display "No news found."
-                mMessageForTheUser = (String) getText(R.string.no_news);
-                mEmptyStateTextView.setText(mMessageForTheUser);
-            }
+        // data set. This will trigger the RecyclerView to update
+        if(!news.isEmpty()){
+            Log.d(LOG_TAG, "Loader load finished");
+            // Only the rows that changed are bound again
+            mAdapter.submitList(news);
+            reportRowsShown();
+            Metrics.stopAtNextFrame(Metrics.FIRST_FRAME, Metrics.start(), mNewsListView);
+            // The rows are only laid out on the next frame
+            mNewsListView.post(new Runnable() {
+                @Override
+                public void run() {
+                    warmUpVisibleNews();
+                }
+            });
+        } else if (feed.isRefreshing()) {
+            // Nothing stored yet, the news are on their way
+            mAdapter.clear();
+            mEmptyStateTextView.setVisibility(View.GONE);
+        } else if (!mIsConnected) {
+            mAdapter.clear();
+            // Nothing cached and no connection, display the no internet connection message
+            mMessageForTheUser = (String) getText(R.string.no_internet);
+            mEmptyStateTextView.setText(mMessageForTheUser);
+            updateEmptyView();
+        } else {
+            mAdapter.clear();
+            // Set empty state text to display "No news found."
+            mMessageForTheUser = (String) getText(R.string.no_news);
+            mEmptyStateTextView.setText(mMessageForTheUser);
+            updateEmptyView();
         }
     }
 
     // We need onLoaderReset(), we're being informed that the data from our loader is no longer valid
     // The correct thing to do is to remove all the news data from our UI by clearing out the adapter’s data set
     @Override
-    public void onLoaderReset(Loader<List<News>> loader) {
-        Log.e(LOG_TAG, "Loader reset");
+    public void onLoaderReset(Loader<NewsRepository.Feed> loader) {
+        if (loader.getId() == SEARCH_LOADER_ID) {
+            return;
+        }
+        Log.d(LOG_TAG, "Loader reset");
         // Loader reset, so we can clear out our existing data
         mAdapter.clear();
     }
+    // Print the timings recorded by {@link Metrics} with adb shell dumpsys activity
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        Metrics.dump(prefix, writer);
+    }
+
     @Override
     // This method initialize the contents of the Activity's options menu.
     public boolean onCreateOptionsMenu(Menu menu) {
+        // The menu is not part of the first frame, it is built by finishStartup()
+        if (!mStartupFinished) {
+            return false;
+        }
+
         // Inflate the Options Menu we specified in XML
         getMenuInflater().inflate(R.menu.main, menu);
+
+        // Search the news we already have while the user types
+        final SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // The user is done typing, do not wait before asking the server
+                if (mSearchQuery != null && mLocalResults.size() < MIN_LOCAL_RESULTS && mIsConnected) {
+                    mSearchHandler.removeCallbacks(mRemoteSearch);
+                    mRemoteSearch.run();
+                }
+                searchView.clearFocus();
+                return true;
+            }
+        });
         return true;
     }
     @Override
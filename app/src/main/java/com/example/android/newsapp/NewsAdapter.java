@@ -1,82 +1,384 @@
 package com.example.android.newsapp;
 
 import android.content.Context;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.example.ola.newsapp1.R;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 
 
 /**
- * {@link NewsAdapter} is an {@link ArrayAdapter} that can provide the layout for each list item
- * based on a data source, which is a list of {@link News} objects.
+ * {@link NewsAdapter} is a {@link RecyclerView.Adapter} that can provide the layout for each
+ * list item based on a data source, which is a list of {@link News} objects.
+ *
+ * New lists are handed over with {@link #submitList(List)}. The texts of their rows are built
+ * and the difference to the current list is computed on a background thread, so binding a row
+ * only assigns its texts and a refresh only rebinds the rows that changed. The texts are kept
+ * by the adapter, the {@link News} themselves are never changed.
+ *
+ * The rows of the first screen can be inflated in the background with
+ * {@link #prefetchRows(ViewGroup, int)} while the activity starts, so its first layout does
+ * not inflate them on the main thread.
  */
 
-public class NewsAdapter extends ArrayAdapter<News> {
+public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.NewsViewHolder> {
+
+    private static final String LOG_TAG = NewsAdapter.class.getName();
+
+    /** Computes the differences between lists away from the main thread */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Interface definition for a callback to be invoked when a news row is clicked.
+     */
+    public interface OnNewsClickListener {
+        void onNewsClick(News news);
+    }
+
+    private final LayoutInflater mInflater;
+    private final OnNewsClickListener mListener;
+
+    /** Loads the thumbnails, decoded to the size of their view */
+    private final ImageLoader mImageLoader;
+    private final int mThumbnailWidth;
+    private final int mThumbnailHeight;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Rows inflated in the background, used before new ones are inflated */
+    private final Deque<View> mPrefetchedRows = new ArrayDeque<>();
+
+    /** Builds the texts of the rows */
+    private final NewsFormatter mFormatter;
+
+    /** News currently shown */
+    private List<News> mNews = Collections.emptyList();
+
+    /** Texts of the rows of {@link #mNews}, by position. Null until built for a row */
+    private NewsRowText[] mRowTexts = new NewsRowText[0];
+
+    /** Incremented with every submitted list, so an outdated diff is never applied */
+    private int mGeneration;
+
+    /**
+     * Holds the views of one row, so they are only looked up once.
+     */
+    static class NewsViewHolder extends RecyclerView.ViewHolder {
+        final TextView mTitleTextView;
+        final TextView mSectionTextView;
+        final TextView mAuthorTextView;
+        final TextView mDateTextView;
+        final ImageView mThumbnailView;
+
+        NewsViewHolder(View itemView) {
+            super(itemView);
+            // Find the TextViews of the news row in the activity_main.xml layout by their IDs
+            mTitleTextView = itemView.findViewById(R.id.news_title);
+            mSectionTextView = itemView.findViewById(R.id.section);
+            mAuthorTextView = itemView.findViewById(R.id.author);
+            mDateTextView = itemView.findViewById(R.id.date);
+            mThumbnailView = itemView.findViewById(R.id.thumbnail);
+        }
+    }
 
     /**
      * Create a new {@link NewsAdapter} object.
      *
      * @param context is the current context (i.e. Activity) that the adapter is being created in.
-     * @param News is the list of {@link News}s to be displayed.
+     * @param listener is notified when the user clicks on a news row.
      */
-    private static final String LOG_TAG = NewsAdapter.class.getName();
+    public NewsAdapter(Context context, OnNewsClickListener listener){
+        mInflater = LayoutInflater.from(context);
+        mListener = listener;
+        mFormatter = new NewsFormatter(context);
+        mImageLoader = ImageLoader.getInstance(context);
+        mThumbnailWidth = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_width);
+        mThumbnailHeight = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_height);
+    }
+
+    /**
+     * Inflate the given number of rows in the background for the given list, they are used by
+     * the next rows created. A row that is needed before it is ready is inflated as usual.
+     * Must be called on the main thread.
+     */
+    public void prefetchRows(ViewGroup parent, int count) {
+        AsyncLayoutInflater inflater = new AsyncLayoutInflater(mInflater.getContext());
+        AsyncLayoutInflater.OnInflateFinishedListener listener =
+                new AsyncLayoutInflater.OnInflateFinishedListener() {
+                    @Override
+                    public void onInflateFinished(View view, int resid, ViewGroup parent) {
+                        mPrefetchedRows.add(view);
+                    }
+                };
+        for (int i = 0; i < count; i++) {
+            inflater.inflate(R.layout.activity_main, parent, listener);
+        }
+    }
 
+    @Override
+    public NewsViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listItemView = mPrefetchedRows.poll();
+        if (listItemView == null) {
+            listItemView = mInflater.inflate(R.layout.activity_main, parent, false);
+        }
+        final NewsViewHolder holder = new NewsViewHolder(listItemView);
+        listItemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    mListener.onNewsClick(mNews.get(position));
+                }
+            }
+        });
+        return holder;
+    }
 
-    public NewsAdapter(Context context, ArrayList<News> news){
-        // Here, we initialize the ArrayAdapter's internal storage for the context and the list.
-        // the second argument is used when the ArrayAdapter is populating a single TextView.
-        // Because this is a custom adapter for some TextViews, the adapter is not
-        // going to use this second argument, so it can be any value. Here, we used 0.
-        super(context,0,news);
+    @Override
+    public void onBindViewHolder(NewsViewHolder holder, int position) {
+        // Get the {@link News} object located at this position in the list and set the
+        // texts prepared in the background on the TextViews of the row
+        long bindStart = Metrics.start();
+        News news = mNews.get(position);
+        NewsRowText rowText = mRowTexts[position];
+        long now = System.currentTimeMillis();
+        // Only the rows shown before a list was submitted are built here, and the rows of a
+        // list shown long enough for their dates to read differently
+        if (rowText == null || !rowText.isCurrent(now)) {
+            rowText = mFormatter.format(news, now);
+            mRowTexts[position] = rowText;
+        }
+        holder.mTitleTextView.setText(rowText.getTitle());
+        holder.mSectionTextView.setText(rowText.getSection());
+        holder.mAuthorTextView.setText(rowText.getAuthor());
+        holder.mDateTextView.setText(rowText.getDate());
+        // The picture is decoded in the background and shown when it is ready
+        mImageLoader.load(news.getThumbnailUrl(), holder.mThumbnailView, mThumbnailWidth, mThumbnailHeight);
+        Metrics.stop(Metrics.BIND, bindStart);
     }
 
+    @Override
+    public void onViewRecycled(NewsViewHolder holder) {
+        // The row scrolled away, its picture is not needed anymore
+        mImageLoader.cancel(holder.mThumbnailView);
+    }
 
-    @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        // Check if the existing view is being reused, otherwise inflate the view
-        View listItemView = convertView;
-        if(listItemView == null){
-            listItemView = LayoutInflater.from(getContext()).inflate(
-               //     R.layout.news_activity,parent,false);
-                    R.layout.activity_main,parent,false);
-        }
-
-        // Get the {@link NewsClass} object located at this position in the list
-        News currentNewsClass = getItem(position);
-
-        // Find the TextView with news title in the news_activity.xml layout with the ID
-        TextView newsTitleTextView = listItemView.findViewById(R.id.news_title);
-        // Get the title from the current object and set this text on that TextView
-        assert currentNewsClass != null;
-        newsTitleTextView.setText(currentNewsClass.getNewsTitle());
-
-        // Find the TextView with news section in the news_activity.xml layout with the ID
-        TextView newsSectionTextView = listItemView.findViewById(R.id.section);
-        // Get the section from the current object and set this text on that TextView
-        newsSectionTextView.setText(currentNewsClass.getNewsSection());
-
-        // Find the TextView with author of the news in the news_activity.xml layout with the ID
-        TextView authorNewsTextView = listItemView.findViewById(R.id.author);
-        // Get the author of the news from the current object and set this text on that TextView
-        authorNewsTextView.setText(currentNewsClass.getAuthorsName());
-
-        // Find the TextView with date of News in the news_activity.xml layout with the ID
-        TextView dateNewsTextView = listItemView.findViewById(R.id.date);
-        // Get the date of the News from the current object and set this text on that TextView
-        dateNewsTextView.setText(currentNewsClass.getNewsDate());
-
-        // Return the whole list item layout
-        // so that it can be shown in the ListView
-        return listItemView;
+    public int getItemCount() {
+        return mNews.size();
+    }
+
+    /**
+     * Return the {@link News} shown at the given position.
+     */
+    public News getItem(int position) {
+        return mNews.get(position);
+    }
+
+    /**
+     * Remove all news from the list.
+     */
+    public void clear() {
+        submitList(Collections.<News>emptyList());
+    }
+
+    /**
+     * Show the rows of a {@link FeedSnapshot} or of the saved state of the activity right
+     * away, while the list is empty. The list is not copied and only the rows that are bound
+     * get decoded and their texts built, which is cheap for the rows of one screen.
+     * Must be called on the main thread.
+     */
+    public void submitSnapshot(List<News> rows) {
+        if (!mNews.isEmpty()) {
+            return;
+        }
+        ++mGeneration;
+        mNews = rows;
+        mRowTexts = new NewsRowText[rows.size()];
+        notifyItemRangeInserted(0, rows.size());
+    }
+
+    /**
+     * Show the given list of news once the texts of its rows have been built in the
+     * background. Rows that did not change are not bound again.
+     * Must be called on the main thread.
+     */
+    public void submitList(List<News> news) {
+        final List<News> oldNews = mNews;
+        final List<News> newNews = news == null
+                ? Collections.<News>emptyList() : new ArrayList<>(news);
+        final int generation = ++mGeneration;
+
+        // Nothing left, no need for texts or a diff
+        if (newNews.isEmpty()) {
+            mNews = newNews;
+            mRowTexts = new NewsRowText[0];
+            if (!oldNews.isEmpty()) {
+                notifyItemRangeRemoved(0, oldNews.size());
+            }
+            return;
+        }
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final NewsRowText[] rowTexts = mFormatter.format(newNews);
+                final Runnable update = diff(oldNews, newNews);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Another list has been submitted in the meantime
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mNews = newNews;
+                        mRowTexts = rowTexts;
+                        update.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return what tells the list how the old news became the new ones. This is on the
+     * background thread, the returned runnable is run on the main thread.
+     */
+    private Runnable diff(final List<News> oldNews, final List<News> newNews) {
+        // Nothing to compare against, no need for a diff
+        if (oldNews.isEmpty()) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    notifyItemRangeInserted(0, newNews.size());
+                }
+            };
+        }
+
+        // A page has been appended, only the new rows have to be inserted
+        if (isAppend(oldNews, newNews)) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    notifyItemRangeInserted(oldNews.size(), newNews.size() - oldNews.size());
+                }
+            };
+        }
+
+        // Newer news have been put at the head, only they have to be inserted
+        if (isPrepend(oldNews, newNews)) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    notifyItemRangeInserted(0, newNews.size() - oldNews.size());
+                }
+            };
+        }
+
+        final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new NewsDiffCallback(oldNews, newNews));
+        return new Runnable() {
+            @Override
+            public void run() {
+                result.dispatchUpdatesTo(NewsAdapter.this);
+            }
+        };
+    }
+
+    /**
+     * Return true if the new list starts with the unchanged news of the old one. Every list
+     * is read again from the cache, so the news are compared and not their instances.
+     */
+    static boolean isAppend(List<News> oldNews, List<News> newNews) {
+        if (newNews.size() < oldNews.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldNews.size(); i++) {
+            if (!isUnchanged(oldNews.get(i), newNews.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the new list ends with the unchanged news of the old one.
+     */
+    static boolean isPrepend(List<News> oldNews, List<News> newNews) {
+        int offset = newNews.size() - oldNews.size();
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < oldNews.size(); i++) {
+            if (!isUnchanged(oldNews.get(i), newNews.get(offset + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if both are the same news, identified by its URL, and it shows the same.
+     */
+    private static boolean isUnchanged(News oldItem, News newItem) {
+        return oldItem.equals(newItem) && hasSameContents(oldItem, newItem);
+    }
+
+    private static boolean hasSameContents(News oldItem, News newItem) {
+        return TextUtils.equals(oldItem.getNewsTitle(), newItem.getNewsTitle())
+                && TextUtils.equals(oldItem.getNewsSection(), newItem.getNewsSection())
+                && TextUtils.equals(oldItem.getAuthorsName(), newItem.getAuthorsName())
+                && oldItem.getNewsDate() == newItem.getNewsDate()
+                && TextUtils.equals(oldItem.getThumbnailUrl(), newItem.getThumbnailUrl());
+    }
+
+    /**
+     * Compares two lists of news, a news is identified by its URL.
+     */
+    private static class NewsDiffCallback extends DiffUtil.Callback {
+        private final List<News> mOldNews;
+        private final List<News> mNewNews;
+
+        NewsDiffCallback(List<News> oldNews, List<News> newNews) {
+            mOldNews = oldNews;
+            mNewNews = newNews;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldNews.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewNews.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            // News are equal when they have the same URL
+            return mOldNews.get(oldPosition).equals(mNewNews.get(newPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return hasSameContents(mOldNews.get(oldPosition), mNewNews.get(newPosition));
+        }
     }
 }
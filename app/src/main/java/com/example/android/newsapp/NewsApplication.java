@@ -0,0 +1,16 @@
+package com.example.android.newsapp;
+
+import android.app.Application;
+
+/**
+ * Sets up what has to be in place before any activity, service or loader runs.
+ */
+public class NewsApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Before the first connection of the process, whether it loads news or thumbnails
+        NewsHttpClient.configureConnectionPool();
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Persistent on-disk cache of parsed {@link News} lists, keyed by the normalized request URL.
+ *
+ * Every entry is a small binary file in its own directory. Entries older than the maximum age
+ * are dropped when they are read, and the least recently used files are deleted once the
+ * directory grows past its size limit.
+ */
+public final class NewsCache {
+
+    private static final String LOG_TAG = NewsCache.class.getName();
+
+    /** Marks the start of every cache file, so foreign or truncated files are ignored */
+    private static final int MAGIC = 0x4e575334;
+
+    /** Name of the cache directory inside the app's cache dir */
+    private static final String DIRECTORY_NAME = "news";
+
+    /** Defaults used for the app wide cache */
+    private static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+    private static final long DEFAULT_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Entries younger than this are shown without asking the server again */
+    static final long FRESH_MILLIS = 5 * 60 * 1000L;
+
+    private static NewsCache sInstance;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final long mMaxAgeMillis;
+    private final Clock mClock;
+
+    /**
+     * A cached list of {@link News} together with the time it was stored and the
+     * validators the server sent with it.
+     */
+    public static final class Entry {
+        private final List<News> mNews;
+        private final long mSavedAt;
+        private final String mETag;
+        private final String mLastModified;
+
+        Entry(List<News> news, long savedAt, String eTag, String lastModified) {
+            mNews = news;
+            mSavedAt = savedAt;
+            mETag = eTag;
+            mLastModified = lastModified;
+        }
+
+        public List<News> getNews() {
+            return mNews;
+        }
+
+        public long getSavedAt() {
+            return mSavedAt;
+        }
+
+        /** Returns the ETag header of the response, or null if there was none */
+        public String getETag() {
+            return mETag;
+        }
+
+        /** Returns the Last-Modified header of the response, or null if there was none */
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /** Returns a copy of the entry stored at the given time */
+        Entry withSavedAt(long savedAt) {
+            return new Entry(mNews, savedAt, mETag, mLastModified);
+        }
+
+        /** Returns true if the entry is recent enough to skip revalidation */
+        public boolean isFresh(long now) {
+            return now - mSavedAt < FRESH_MILLIS;
+        }
+    }
+
+    /**
+     * Return the cache shared by the whole app.
+     */
+    public static synchronized NewsCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+            sInstance = new NewsCache(directory, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS, Clock.SYSTEM);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsCache}.
+     *
+     * @param directory where the entries are stored
+     * @param maxBytes is the total size the entries may take before the oldest are evicted
+     * @param maxAgeMillis is how long an entry may be served at all
+     * @param clock tells how old the entries are
+     */
+    NewsCache(File directory, long maxBytes, long maxAgeMillis, Clock clock) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mMaxAgeMillis = maxAgeMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Return the cached entry for the given request URL, or null if there is none
+     * or it has expired.
+     */
+    public synchronized Entry get(String requestUrl) {
+        String key = normalizeUrl(requestUrl);
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        long now = mClock.currentTimeMillis();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a news cache file");
+            }
+            long savedAt = in.readLong();
+            // Two different keys may share a file name, so make sure this entry is ours
+            if (!key.equals(in.readUTF()) || now - savedAt > mMaxAgeMillis) {
+                in.close();
+                in = null;
+                file.delete();
+                return null;
+            }
+            String eTag = readString(in);
+            String lastModified = readString(in);
+            int count = in.readInt();
+            List<News> newsList = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String title = readString(in);
+                String section = readString(in);
+                String author = readString(in);
+                long date = in.readLong();
+                String url = readString(in);
+                newsList.add(new News(title, section, author, date, url, readString(in)));
+            }
+            // Touch the file so that eviction sees it as recently used
+            file.setLastModified(now);
+            return new Entry(newsList, savedAt, eTag, lastModified);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the news cache", e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store the list of {@link News} for the given request URL, replacing any older entry.
+     */
+    public void put(String requestUrl, List<News> newsList) {
+        put(requestUrl, new Entry(newsList, mClock.currentTimeMillis(), null, null));
+    }
+
+    /**
+     * Store the entry for the given request URL, replacing any older entry.
+     */
+    public synchronized void put(String requestUrl, Entry entry) {
+        List<News> newsList = entry.getNews();
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create the news cache directory");
+            return;
+        }
+
+        String key = normalizeUrl(requestUrl);
+        File file = fileFor(key);
+        // Write to a temporary file first so readers never see half an entry
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeLong(entry.getSavedAt());
+            out.writeUTF(key);
+            writeString(out, entry.getETag());
+            writeString(out, entry.getLastModified());
+            out.writeInt(newsList.size());
+            for (News news : newsList) {
+                writeString(out, news.getNewsTitle());
+                writeString(out, news.getNewsSection());
+                writeString(out, news.getAuthorsName());
+                out.writeLong(news.getNewsDate());
+                writeString(out, news.getNewsUrl());
+                writeString(out, news.getThumbnailUrl());
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the news cache", e);
+            temp.delete();
+            return;
+        } finally {
+            closeQuietly(out);
+        }
+
+        trimToSize();
+    }
+
+    /**
+     * Delete the least recently used entries until the cache fits into its size limit.
+     */
+    private void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxBytes) {
+            return;
+        }
+
+        List<File> byAge = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(byAge, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long left = a.lastModified();
+                long right = b.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        for (File file : byAge) {
+            if (size <= mMaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(mDirectory, Integer.toHexString(key.hashCode()));
+    }
+
+    /**
+     * Return the request URL with a lower case scheme and host and its query parameters
+     * sorted, so that equivalent requests share one cache entry.
+     */
+    static String normalizeUrl(String requestUrl) {
+        try {
+            URI uri = new URI(requestUrl);
+            String query = uri.getRawQuery();
+            StringBuilder normalized = new StringBuilder();
+            if (uri.getScheme() != null) {
+                normalized.append(uri.getScheme().toLowerCase(Locale.US)).append("://");
+            }
+            if (uri.getRawAuthority() != null) {
+                normalized.append(uri.getRawAuthority().toLowerCase(Locale.US));
+            }
+            if (uri.getRawPath() != null) {
+                normalized.append(uri.getRawPath());
+            }
+            if (query != null && !query.isEmpty()) {
+                String[] parameters = query.split("&");
+                Arrays.sort(parameters);
+                normalized.append('?');
+                for (int i = 0; i < parameters.length; i++) {
+                    if (i > 0) {
+                        normalized.append('&');
+                    }
+                    normalized.append(parameters[i]);
+                }
+            }
+            return normalized.toString();
+        } catch (URISyntaxException e) {
+            return requestUrl;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // Nothing left to do with a stream we are done with
+            }
+        }
+    }
+}
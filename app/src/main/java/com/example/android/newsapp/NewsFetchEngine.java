@@ -0,0 +1,213 @@
+package com.example.android.newsapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs several Guardian queries at the same time and merges their results into one feed.
+ *
+ * The queries run on the {@link FetchPipeline} as background work, behind everything the user
+ * waits for. The pipeline keeps one of its threads for the user and the {@link NewsHttpClient}
+ * sends at most {@link NewsHttpClient#MAX_REQUESTS_PER_HOST} requests to a host at once, so in
+ * the app three queries run together. A feed of more queries is fetched in waves, it takes
+ * about as long as the slowest query of every wave, one wave after the other. Queries that
+ * have not finished when the timeout expires are cancelled, which closes their connections,
+ * and the feed is built from the ones that did.
+ */
+public final class NewsFetchEngine {
+
+    private static final String LOG_TAG = NewsFetchEngine.class.getName();
+
+    /** Number of queries that may wait in the pipeline of an engine of its own */
+    private static final int MAX_QUEUED = 16;
+
+    private static NewsFetchEngine sInstance;
+
+    private final FetchPipeline mPipeline;
+
+    /**
+     * Orders news from the most recently published to the oldest, news without a date last.
+     */
+    private static final Comparator<News> NEWEST_FIRST = new Comparator<News>() {
+        @Override
+        public int compare(News a, News b) {
+            long left = a.getNewsDate();
+            long right = b.getNewsDate();
+            return left > right ? -1 : (left == right ? 0 : 1);
+        }
+    };
+
+    /**
+     * Return the engine shared by the whole app.
+     */
+    public static synchronized NewsFetchEngine getInstance() {
+        if (sInstance == null) {
+            sInstance = new NewsFetchEngine(FetchPipeline.getInstance());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsFetchEngine} with a pipeline of its own.
+     *
+     * @param threads is the number of threads of the pipeline
+     */
+    NewsFetchEngine(int threads) {
+        // Nothing is delivered, the engine waits for the calls itself
+        this(new FetchPipeline(threads, MAX_QUEUED, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        }));
+    }
+
+    /**
+     * Constructs a new {@link NewsFetchEngine}.
+     *
+     * @param pipeline runs the queries
+     */
+    NewsFetchEngine(FetchPipeline pipeline) {
+        mPipeline = pipeline;
+    }
+
+    /**
+     * Query all the given URLs concurrently and return their news merged into one list,
+     * newest first and without duplicate articles.
+     *
+     * @param requestUrls are the Guardian queries making up the feed
+     * @param timeoutMillis is how long to wait for the slowest query
+     * @return the merged news, which only hold the queries that finished in time
+     */
+    public List<News> fetchAll(List<String> requestUrls, final long timeoutMillis) {
+        List<FetchPipeline.Stages<NewsCache.Entry, List<News>>> tasks = new ArrayList<>(requestUrls.size());
+        for (final String requestUrl : requestUrls) {
+            tasks.add(new FetchPipeline.Stages<NewsCache.Entry, List<News>>() {
+                @Override
+                public NewsCache.Entry fetch(FetchPipeline.Call<?> call) throws IOException {
+                    // Retries and coalescing with identical queries are left to the fetcher
+                    return NewsFetcher.getInstance().fetch(requestUrl, null, timeoutMillis, call);
+                }
+
+                @Override
+                public List<News> postProcess(NewsCache.Entry entry) {
+                    return entry == null ? null : entry.getNews();
+                }
+            });
+        }
+
+        List<List<News>> results = new ArrayList<>(tasks.size());
+        for (Map.Entry<String, List<News>> result : collect(requestUrls, tasks, timeoutMillis)) {
+            results.add(result.getValue());
+        }
+        return merge(results);
+    }
+
+    /**
+     * Query all the given URLs concurrently and return the entry of every query that finished
+     * in time. Each query is conditional on its previous entry, if it has one.
+     *
+     * @param requests maps every Guardian query to its previous entry, or to null
+     * @param timeoutMillis is how long to wait for the slowest query
+     * @return the new entries by query URL
+     */
+    public Map<String, NewsCache.Entry> fetchEntries(Map<String, NewsCache.Entry> requests,
+                                                     final long timeoutMillis) {
+        final List<String> requestUrls = new ArrayList<>(requests.keySet());
+        List<FetchPipeline.Stages<NewsCache.Entry, NewsCache.Entry>> tasks = new ArrayList<>(requestUrls.size());
+        for (final String requestUrl : requestUrls) {
+            final NewsCache.Entry previous = requests.get(requestUrl);
+            tasks.add(new FetchPipeline.Stages<NewsCache.Entry, NewsCache.Entry>() {
+                @Override
+                public NewsCache.Entry fetch(FetchPipeline.Call<?> call) throws IOException {
+                    return NewsFetcher.getInstance().fetch(requestUrl, previous, timeoutMillis, call);
+                }
+
+                @Override
+                public NewsCache.Entry postProcess(NewsCache.Entry entry) {
+                    return entry;
+                }
+            });
+        }
+
+        Map<String, NewsCache.Entry> entries = new HashMap<>();
+        for (Map.Entry<String, NewsCache.Entry> result : collect(requestUrls, tasks, timeoutMillis)) {
+            entries.put(result.getKey(), result.getValue());
+        }
+        return entries;
+    }
+
+    /**
+     * Run the tasks, one per request URL, and return the results of the ones that finished
+     * in time, paired with their URL. If the calling thread is interrupted, the results so far
+     * are returned.
+     */
+    private <R, T> List<Map.Entry<String, T>> collect(List<String> requestUrls,
+                                                      List<FetchPipeline.Stages<R, T>> tasks,
+                                                      long timeoutMillis) {
+        List<Map.Entry<String, T>> results = new ArrayList<>(tasks.size());
+        List<FetchPipeline.Call<T>> calls = new ArrayList<>(tasks.size());
+        for (FetchPipeline.Stages<R, T> task : tasks) {
+            // Nobody is looking at a sync, it waits for what is on screen
+            calls.add(mPipeline.submit(task, FetchPipeline.Priority.BACKGROUND, null));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (int i = 0; i < calls.size(); i++) {
+                FetchPipeline.Call<T> call = calls.get(i);
+                if (!call.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    Log.e(LOG_TAG, "Query timed out " + requestUrls.get(i));
+                    continue;
+                }
+                // Failed queries have been logged by the fetcher
+                T result = call.getResult();
+                if (result != null) {
+                    results.add(new AbstractMap.SimpleImmutableEntry<>(requestUrls.get(i), result));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Whatever is still running is stopped and its connection closed
+            for (FetchPipeline.Call<T> call : calls) {
+                call.cancel();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Return the news of all lists, newest first, keeping only the first news of every URL.
+     */
+    static List<News> merge(List<List<News>> results) {
+        int size = 0;
+        for (List<News> news : results) {
+            size += news.size();
+        }
+
+        Set<String> seenUrls = new HashSet<>(size * 2);
+        List<News> merged = new ArrayList<>(size);
+        for (List<News> newsList : results) {
+            for (News news : newsList) {
+                if (news.getNewsUrl() == null || seenUrls.add(news.getNewsUrl())) {
+                    merged.add(news);
+                }
+            }
+        }
+        Collections.sort(merged, NEWEST_FIRST);
+        return merged;
+    }
+}
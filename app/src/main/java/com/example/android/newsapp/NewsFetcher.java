@@ -0,0 +1,220 @@
+package com.example.android.newsapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends the Guardian queries of the whole app, on top of the single attempts made by
+ * {@link QueryUtils}.
+ *
+ * Identical queries that are in flight at the same time share one request, which is made again
+ * for the others when the caller that made it is cancelled. Server errors and
+ * timeouts are retried with a jittered exponential backoff, waiting at least as long as a
+ * Retry-After header asks for. Every query has a deadline, which bounds all of its attempts
+ * together instead of a fixed timeout per connection.
+ *
+ * A query made for a call of the {@link FetchPipeline} stops as soon as the call is cancelled,
+ * without another attempt.
+ */
+public final class NewsFetcher {
+
+    private static final String LOG_TAG = NewsFetcher.class.getName();
+
+    /** Deadline of a query when the caller does not give one */
+    static final long DEFAULT_DEADLINE_MILLIS = 30 * 1000;
+
+    /** Number of attempts made for one query */
+    private static final int MAX_ATTEMPTS = 4;
+
+    /** The backoff doubles from the base with every attempt, up to the maximum */
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 8 * 1000;
+
+    private static NewsFetcher sInstance;
+
+    /** Requests in flight, by normalized URL and the validators they are conditional on */
+    private final ConcurrentHashMap<String, SharedRequest> mInFlight = new ConcurrentHashMap<>();
+
+    private final Random mRandom = new Random();
+
+    /**
+     * A request the callers of identical queries wait for, made on the thread of one of them.
+     */
+    private static final class SharedRequest extends FutureTask<NewsCache.Entry> {
+        /** The call the request is made for, or null */
+        final FetchPipeline.Call<?> mCall;
+
+        SharedRequest(Callable<NewsCache.Entry> request, FetchPipeline.Call<?> call) {
+            super(request);
+            mCall = call;
+        }
+
+        /**
+         * Return true if the request failed because the caller that made it gave up on it.
+         */
+        boolean wasCancelled() {
+            return mCall != null && mCall.isCancelled();
+        }
+    }
+
+    /**
+     * Return the fetcher shared by the whole app, so identical queries from different
+     * screens and jobs are coalesced.
+     */
+    public static synchronized NewsFetcher getInstance() {
+        if (sInstance == null) {
+            sInstance = new NewsFetcher();
+        }
+        return sInstance;
+    }
+
+    NewsFetcher() {
+    }
+
+    /**
+     * Query the Guardian dataset and return a list of {@link News} objects, or null if the
+     * query failed.
+     */
+    public List<News> fetch(String requestUrl) {
+        return fetch(requestUrl, (FetchPipeline.Call<?>) null);
+    }
+
+    /**
+     * Query the Guardian dataset for a call of the {@link FetchPipeline} and return a list of
+     * {@link News} objects, or null if the query failed or the call was cancelled.
+     */
+    public List<News> fetch(String requestUrl, FetchPipeline.Call<?> call) {
+        NewsCache.Entry entry = fetch(requestUrl, null, DEFAULT_DEADLINE_MILLIS, call);
+        return entry == null ? null : entry.getNews();
+    }
+
+    /**
+     * Query the Guardian dataset, conditional on the previous entry if there is one.
+     * This blocks, call it on a background thread.
+     *
+     * @param requestUrl is the Guardian query
+     * @param previous is the entry cached for the query, or null
+     * @param deadlineMillis is how long all attempts together may take
+     * @return the new entry, or null if the query failed or missed its deadline
+     */
+    public NewsCache.Entry fetch(String requestUrl, NewsCache.Entry previous, long deadlineMillis) {
+        return fetch(requestUrl, previous, deadlineMillis, null);
+    }
+
+    /**
+     * Query the Guardian dataset like {@link #fetch(String, NewsCache.Entry, long)}, for a call
+     * of the {@link FetchPipeline}.
+     *
+     * @param call is the fetch the query is made for, or null
+     * @return the new entry, or null if the query failed, missed its deadline or was cancelled
+     */
+    public NewsCache.Entry fetch(final String requestUrl, final NewsCache.Entry previous,
+                                 long deadlineMillis, final FetchPipeline.Call<?> call) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        // A request conditional on other validators may be answered differently
+        String key = NewsCache.normalizeUrl(requestUrl);
+        if (previous != null) {
+            key += "\n" + previous.getETag() + "\n" + previous.getLastModified();
+        }
+
+        while (true) {
+            SharedRequest request = new SharedRequest(new Callable<NewsCache.Entry>() {
+                @Override
+                public NewsCache.Entry call() throws Exception {
+                    return fetchWithRetries(requestUrl, previous, deadline, call);
+                }
+            }, call);
+            SharedRequest inFlight = mInFlight.putIfAbsent(key, request);
+            if (inFlight == null) {
+                // No one else is asking for this URL, make the request on this thread
+                try {
+                    request.run();
+                } finally {
+                    mInFlight.remove(key, request);
+                }
+                inFlight = request;
+            }
+
+            try {
+                // Wait for the shared request, but never past our own deadline
+                long remaining = deadline - System.nanoTime();
+                return inFlight.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                Log.e(LOG_TAG, "Deadline exceeded for " + requestUrl);
+            } catch (ExecutionException e) {
+                if (call != null && call.isCancelled()) {
+                    Log.d(LOG_TAG, "Cancelled " + requestUrl);
+                } else if (inFlight != request && inFlight.wasCancelled()) {
+                    // We still wait for the news, make the request again
+                    mInFlight.remove(key, inFlight);
+                    continue;
+                } else {
+                    Log.e(LOG_TAG, "Problem making the HTTP request.", e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Make attempts until one succeeds, the error is not worth retrying, or the next attempt
+     * could not start before the deadline.
+     */
+    private NewsCache.Entry fetchWithRetries(String requestUrl, NewsCache.Entry previous, long deadline,
+                                             FetchPipeline.Call<?> call) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                throw new SocketTimeoutException("Deadline exceeded");
+            }
+
+            IOException failure;
+            long delayMillis = backoffMillis(attempt);
+            try {
+                return QueryUtils.requestNewsData(requestUrl, previous,
+                        (int) Math.min(remainingMillis, Integer.MAX_VALUE), call);
+            } catch (HttpStatusException e) {
+                if (!e.isRetryable()) {
+                    throw e;
+                }
+                failure = e;
+                delayMillis = Math.max(delayMillis, e.getRetryAfterMillis());
+            } catch (IOException e) {
+                // Nobody waits for a cancelled query anymore
+                if (call != null && call.isCancelled()) {
+                    throw e;
+                }
+                // Timeouts and dropped connections are common on mobile networks
+                failure = e;
+            }
+
+            long delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            if (attempt + 1 >= MAX_ATTEMPTS || System.nanoTime() + delayNanos >= deadline) {
+                throw failure;
+            }
+            Log.w(LOG_TAG, "Attempt " + (attempt + 1) + " failed, retrying in " + delayMillis + " ms");
+            Thread.sleep(delayMillis);
+        }
+    }
+
+    /**
+     * Return a random delay between zero and the exponential backoff of the given attempt,
+     * so clients that failed together do not retry together.
+     */
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        return (long) (mRandom.nextDouble() * cap);
+    }
+}
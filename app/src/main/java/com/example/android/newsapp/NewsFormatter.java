@@ -0,0 +1,103 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+
+import com.example.ola.newsapp1.R;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the {@link NewsRowText} of every {@link News}, turning the raw fields from the
+ * Guardian into the texts shown in a row.
+ *
+ * This runs on the background thread of the {@link NewsAdapter} when a list is submitted.
+ */
+public final class NewsFormatter {
+
+    /** Titles longer than this are cut and end with an ellipsis */
+    private static final int MAX_TITLE_LENGTH = 140;
+
+    /** Author name the parser uses when a news has no contributor */
+    private static final String NO_AUTHOR = "N/A";
+
+    private final String mUnknownAuthor;
+    private final String mNoDate;
+
+    /**
+     * Constructs a new {@link NewsFormatter}.
+     *
+     * @param context is used to look up the fallback texts
+     */
+    public NewsFormatter(Context context) {
+        mUnknownAuthor = context.getString(R.string.unknown_author);
+        mNoDate = context.getString(R.string.no_date);
+    }
+
+    /**
+     * Return the row texts of all news in the list, by position.
+     */
+    public NewsRowText[] format(List<News> newsList) {
+        long now = System.currentTimeMillis();
+        NewsRowText[] rowTexts = new NewsRowText[newsList.size()];
+        for (int i = 0; i < rowTexts.length; i++) {
+            rowTexts[i] = format(newsList.get(i), now);
+        }
+        return rowTexts;
+    }
+
+    /**
+     * Return the row texts of the given news, with dates relative to the given time.
+     */
+    NewsRowText format(News news, long now) {
+        return new NewsRowText(
+                formatTitle(news.getNewsTitle()),
+                // The section is shown in capitals, done once here instead of on every bind
+                news.getNewsSection() == null ? "" : news.getNewsSection().toUpperCase(Locale.getDefault()),
+                TextUtils.isEmpty(news.getAuthorsName()) || NO_AUTHOR.equals(news.getAuthorsName())
+                        ? mUnknownAuthor : news.getAuthorsName(),
+                formatDate(news.getNewsDate(), now),
+                validUntil(news.getNewsDate(), now));
+    }
+
+    private static String formatTitle(String title) {
+        if (title == null) {
+            return "";
+        }
+        if (title.length() <= MAX_TITLE_LENGTH) {
+            return title;
+        }
+        return title.substring(0, MAX_TITLE_LENGTH - 1).trim() + "…";
+    }
+
+    /**
+     * Return the publication date as a relative time span such as "3 hours ago".
+     */
+    private CharSequence formatDate(long date, long now) {
+        if (date == News.NO_DATE) {
+            return mNoDate;
+        }
+        return DateUtils.getRelativeTimeSpanString(date, now,
+                DateUtils.MINUTE_IN_MILLIS, DateUtils.FORMAT_ABBREV_RELATIVE);
+    }
+
+    /**
+     * Return until when the relative date of a news published at the given time reads the
+     * same. It counts minutes in the first hour, then hours for a day, then days.
+     */
+    static long validUntil(long date, long now) {
+        if (date == News.NO_DATE) {
+            return Long.MAX_VALUE;
+        }
+        long age = now - date;
+        if (age < 0) {
+            // Published in the future by our clock, check again soon
+            return now + DateUtils.MINUTE_IN_MILLIS;
+        }
+        long step = age < DateUtils.HOUR_IN_MILLIS ? DateUtils.MINUTE_IN_MILLIS
+                : age < DateUtils.DAY_IN_MILLIS ? DateUtils.HOUR_IN_MILLIS : DateUtils.DAY_IN_MILLIS;
+        return now + step - age % step;
+    }
+}
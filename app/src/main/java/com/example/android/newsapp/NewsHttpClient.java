@@ -0,0 +1,146 @@
+package com.example.android.newsapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Opens the HTTP connections of the app, so requests to the same host share their sockets.
+ *
+ * HttpURLConnection keeps a socket alive for the next request to the same host once the body
+ * of the response has been read to its end and closed, as long as the connection is not
+ * disconnected. Every request goes through {@link #open(URL, int)} and
+ * {@link #release(HttpURLConnection, InputStream, boolean)}, which does just that. Requests to
+ * one host are bounded, so at most that many connections to it are open or idle at any time,
+ * and idle connections are closed after a while.
+ *
+ * The connection pool of HttpURLConnection reads its settings once, when the first connection
+ * of the process is opened, by whichever class opens it. {@link #configureConnectionPool()} is
+ * therefore called by {@link NewsApplication} before anything else runs.
+ *
+ * HTTP/2 multiplexing is not available through HttpURLConnection.
+ */
+public final class NewsHttpClient {
+
+    /** Largest number of requests to one host at the same time, and so of connections to it */
+    static final int MAX_REQUESTS_PER_HOST = 4;
+
+    /** Idle connections are closed after this long */
+    private static final long KEEP_ALIVE_MILLIS = 5 * 60 * 1000L;
+
+    /** Bytes left in a body that are read to keep its connection, a larger rest closes it */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static NewsHttpClient sInstance;
+
+    /** Free request slots of every host */
+    private final Map<String, Semaphore> mHostPermits = new HashMap<>();
+
+    /**
+     * Return the client shared by the whole app.
+     */
+    public static synchronized NewsHttpClient getInstance() {
+        if (sInstance == null) {
+            sInstance = new NewsHttpClient();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Keep idle connections alive, as many per host as we make requests to it at once. This
+     * has no effect once a connection has been opened, call it when the process starts.
+     */
+    static void configureConnectionPool() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_REQUESTS_PER_HOST));
+        System.setProperty("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_MILLIS));
+    }
+
+    private NewsHttpClient() {
+    }
+
+    /**
+     * Return a connection to the given URL, waiting while the host already serves the most
+     * requests we make to it. The connection must be given back with
+     * {@link #release(HttpURLConnection, InputStream, boolean)}.
+     *
+     * @param timeoutMillis bounds connecting and every read of the response
+     */
+    HttpURLConnection open(URL url, int timeoutMillis) throws IOException {
+        Semaphore permits = permitsOf(url.getHost());
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection to " + url.getHost());
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a connection returned by {@link #open(URL, int)}. The rest of the body is read
+     * and the stream closed, so the socket can serve the next request.
+     *
+     * @param body is the stream the response was read from, or null if there was none
+     * @param reusable is false when the response was not read properly, its socket is closed
+     */
+    void release(HttpURLConnection connection, InputStream body, boolean reusable) {
+        try {
+            if (body != null) {
+                if (reusable) {
+                    reusable = drain(body);
+                }
+                body.close();
+            }
+        } catch (IOException e) {
+            reusable = false;
+        } finally {
+            if (!reusable) {
+                connection.disconnect();
+            }
+            permitsOf(connection.getURL().getHost()).release();
+        }
+    }
+
+    /**
+     * Read what is left of the body. Return false if too much was left.
+     */
+    private static boolean drain(InputStream body) throws IOException {
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int drained = 0;
+            int count;
+            while ((count = body.read(buffer)) != -1) {
+                drained += count;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private synchronized Semaphore permitsOf(String host) {
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            permits = new Semaphore(MAX_REQUESTS_PER_HOST);
+            mHostPermits.put(host, permits);
+        }
+        return permits;
+    }
+}
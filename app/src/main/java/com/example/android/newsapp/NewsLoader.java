@@ -1,19 +1,53 @@
 package com.example.android.newsapp;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.content.Loader;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
 
-import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
- * Loads a list of news by using an AsyncTask to perform the
- * network request to the given URL.
+ * Loads the news of a query from the {@link NewsRepository} on a thread of its own, so the
+ * disk is never read on the main thread, nor behind the requests of the {@link FetchPipeline}.
+ *
+ * The loader never waits for the network. It delivers the stored news right away and, when
+ * they are stale, asks the repository to refresh them in the background. Whenever the
+ * repository reports that the feed changed, the stored news are read and delivered again.
+ * The feed delivered last is kept, so a restarted loader hands it over without reading the
+ * disk or asking the server again.
+ *
+ * A read that is not needed anymore is cancelled. Once the loader is reset, because the query
+ * changed or the screen is gone, the requests of its feed are cancelled too, so a superseded
+ * query is not downloaded to its end.
  */
-public class NewsLoader extends AsyncTaskLoader<List<News>> {
+public class NewsLoader extends Loader<NewsRepository.Feed>
+        implements NewsRepository.Observer {
+
+    /** Reads the stored feeds, one at a time */
+    private static final Executor READ_EXECUTOR = Executors.newSingleThreadExecutor();
 
     /** Query URL */
     private String mUrl;
 
+    /** Store of the news */
+    private final NewsRepository mRepository;
+
+    /** Delivers the reads on the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Read in progress, and the cancelled one the loader manager waits for */
+    private LoadTask mTask;
+    private LoadTask mCancellingTask;
+
+    /** Feed delivered last, delivered again when the activity comes back */
+    private NewsRepository.Feed mFeed;
+
+    /** When the loader last asked for stale news to be refreshed, so a restart does not ask again */
+    private long mRefreshRequestedAt;
+
     /**
      * Constructs a new {@link NewsLoader}.
      *
@@ -23,23 +57,159 @@ public class NewsLoader extends AsyncTaskLoader<List<News>> {
     public NewsLoader(Context context, String url){
         super(context);
         mUrl = url;
+        mRepository = NewsRepository.getInstance(context);
     }
 
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        mRepository.registerObserver(this);
+        if (mFeed != null) {
+            deliverResult(mFeed);
+        }
+        if (takeContentChanged() || mFeed == null) {
+            forceLoad();
+        }
     }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        // Only the latest read is delivered
+        cancelLoad();
+        mTask = new LoadTask();
+        READ_EXECUTOR.execute(mTask);
+    }
+
+    @Override
+    protected boolean onCancelLoad() {
+        if (mTask == null) {
+            return false;
+        }
+        LoadTask task = mTask;
+        mTask = null;
+        task.mCancelled = true;
+        if (mCancellingTask != null) {
+            // The loader manager is already told when the earlier read is cancelled
+            return false;
+        }
+        mCancellingTask = task;
+        return true;
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+        mRepository.unregisterObserver(this);
+        mFeed = null;
+        // Nobody shows this feed anymore, stop downloading it
+        if (mUrl != null) {
+            mRepository.cancel(mUrl);
+        }
+    }
+
+    @Override
+    public void onFeedChanged(String url) {
+        if (NewsCache.normalizeUrl(url).equals(NewsCache.normalizeUrl(mUrl))) {
+            // Loads again if started, otherwise when it is started
+            onContentChanged();
+        }
+    }
+
     /**
-     * This is on a background thread.
+     * Ask the server for the news published since the ones delivered, for a pull to refresh.
+     *
+     * @return true if news will be delivered once the server answered, false if it cannot be
+     * reached
      */
-    @Override
-    public List<News> loadInBackground() {
+    public boolean refresh() {
+        return mUrl != null && mRepository.refresh(mUrl);
+    }
+
+    /**
+     * Start fetching the page after the last loaded one in the background. Nothing happens
+     * while another request is in flight or when the last page has been reached.
+     *
+     * @return true if a new page is being loaded
+     */
+    public boolean loadNextPage() {
+        return mUrl != null && mFeed != null && mFeed.hasMorePages()
+                && mRepository.loadNextPage(mUrl);
+    }
+
+    /**
+     * This is on the thread of the reads.
+     */
+    private NewsRepository.Feed loadInBackground() {
         if(mUrl == null){
             return null;
         }
 
-        // Perform the network request, parse the response, and extract a list of News.
-        List<News> news = QueryUtils.fetchNewsData(mUrl);
-        return news;
+        long loadStart = Metrics.start();
+        Trace.beginSection("NewsLoader.loadInBackground");
+        try {
+            NewsRepository.Feed feed = mRepository.getFeed(mUrl);
+
+            // Everything we have seen can be searched without the network
+            SearchIndex.getInstance().addAll(feed.getNews());
+            Metrics.stop(Metrics.LOAD, loadStart);
+            return feed;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Reads the feed in the background and delivers it on the main thread. A cancelled read
+     * that has not started yet is skipped.
+     */
+    private final class LoadTask implements Runnable {
+        volatile boolean mCancelled;
+
+        @Override
+        public void run() {
+            final NewsRepository.Feed feed = mCancelled ? null : loadInBackground();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCancellingTask == LoadTask.this) {
+                        mCancellingTask = null;
+                        deliverCancellation();
+                    } else if (mTask == LoadTask.this) {
+                        mTask = null;
+                        deliverResult(feed);
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void deliverResult(NewsRepository.Feed feed) {
+        if (isReset()) {
+            return;
+        }
+        mFeed = feed;
+        if (isStarted()) {
+            super.deliverResult(feed);
+            refreshIfStale(feed);
+        }
+    }
+
+    /**
+     * Ask the repository for current news when the stored ones are stale. A rotation or a
+     * return from the browser right after a refresh does not ask again, even if it failed.
+     */
+    private void refreshIfStale(NewsRepository.Feed feed) {
+        long now = System.currentTimeMillis();
+        if (feed != null && !feed.isRefreshing() && feed.isStale(now)
+                && now - mRefreshRequestedAt >= NewsCache.FRESH_MILLIS) {
+            mRefreshRequestedAt = now;
+            mRepository.refresh(mUrl);
+        }
     }
 }
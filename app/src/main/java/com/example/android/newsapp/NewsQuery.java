@@ -0,0 +1,189 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+
+import com.example.ola.newsapp1.R;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Guardian query of the feed, built from the settings of the user.
+ *
+ * Settings are normalized before they are used: an unknown order falls back to the default and
+ * the number of news is read as a whole number within the limits of the API. Two settings
+ * that ask for the same news therefore give equal queries with the same URL, so the feed is
+ * only reloaded when its query really changed and the {@link NewsCache} entry of a query used
+ * before is found again.
+ */
+public final class NewsQuery {
+
+    private static final String BASE_URL = "http://content.guardianapis.com/search";
+    private static final String API_KEY = "6f2b2fc3-131e-4731-8fbb-dd514a95c728";
+
+    /** Search terms of the feed */
+    static final String DEFAULT_SEARCH_TERMS = "politics";
+
+    private static final String DEFAULT_ORDER_BY = "newest";
+    private static final List<String> ORDER_BY_VALUES = Arrays.asList("newest", "oldest", "relevance");
+
+    /** Number of news per page, the API accepts between 1 and 50 */
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 50;
+
+    private final String mSearchTerms;
+    private final String mOrderBy;
+    private final int mPageSize;
+
+    /** Query parameters without the API key, in alphabetical order */
+    private final String mKey;
+
+    /**
+     * Return the query of the feed for the current settings.
+     */
+    public static NewsQuery fromPreferences(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String orderBy = sharedPrefs.getString(
+                context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+        String pageSize = sharedPrefs.getString(
+                context.getString(R.string.settings_number_of_news_key),
+                context.getString(R.string.settings_number_of_news_default));
+        return new NewsQuery(DEFAULT_SEARCH_TERMS, orderBy, pageSize);
+    }
+
+    /**
+     * Constructs a new {@link NewsQuery} from raw setting values, which are normalized.
+     *
+     * @param searchTerms are the words the news are searched for
+     * @param orderBy is newest, oldest or relevance
+     * @param pageSize is the number of news per page, as typed by the user
+     */
+    NewsQuery(String searchTerms, String orderBy, String pageSize) {
+        mSearchTerms = searchTerms == null ? "" : searchTerms.trim().replaceAll("\\s+", " ");
+        mOrderBy = orderBy != null && ORDER_BY_VALUES.contains(orderBy.trim())
+                ? orderBy.trim() : DEFAULT_ORDER_BY;
+        mPageSize = parsePageSize(pageSize);
+        mKey = "order-by=" + mOrderBy
+                + "&page-size=" + mPageSize
+                + "&q=" + Uri.encode(mSearchTerms)
+                + "&show-fields=thumbnail"
+                + "&show-tags=contributor";
+    }
+
+    /**
+     * Return the same query searching for other terms.
+     */
+    public NewsQuery withSearchTerms(String searchTerms) {
+        return new NewsQuery(searchTerms, mOrderBy, String.valueOf(mPageSize));
+    }
+
+    public String getOrderBy() {
+        return mOrderBy;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Return the normalized parameters of the query, equal for equal queries.
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Return the URL of the query.
+     */
+    public String toUrl() {
+        return BASE_URL + "?api-key=" + API_KEY + "&" + mKey;
+    }
+
+    /**
+     * Return the URL of the search endpoint with the API key, the parameters of a request
+     * are appended to it.
+     */
+    static String searchUrl() {
+        return BASE_URL + "?api-key=" + API_KEY;
+    }
+
+    /**
+     * Return the URL asking the given search endpoint for the bodies of the given news, in
+     * HTML, or null if none of them is a Guardian article.
+     *
+     * @param searchUrl is the search endpoint, as returned by {@link #searchUrl()}
+     * @param newsUrls are the web URLs of the news, at most {@link #MAX_PAGE_SIZE}
+     */
+    static String articleBodiesUrl(String searchUrl, List<String> newsUrls) {
+        StringBuilder ids = new StringBuilder();
+        int count = 0;
+        for (String newsUrl : newsUrls) {
+            String id = idOf(newsUrl);
+            if (id != null && count < MAX_PAGE_SIZE) {
+                ids.append(count == 0 ? "" : ",").append(id);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        // The ids of a page are all answered in one response
+        return searchUrl + "&ids=" + ids + "&page-size=" + count + "&show-fields=body";
+    }
+
+    /**
+     * Return the Guardian id of the news at the given web URL, which is its path, or null.
+     */
+    static String idOf(String newsUrl) {
+        if (newsUrl == null) {
+            return null;
+        }
+        try {
+            String path = new URI(newsUrl).getRawPath();
+            return path == null || path.length() <= 1 ? null : path.substring(1);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NewsQuery && mKey.equals(((NewsQuery) other).mKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return mKey.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mKey;
+    }
+
+    /**
+     * Read the number of news typed by the user, which may have decimals, as a page size
+     * the API accepts.
+     */
+    private static int parsePageSize(String pageSize) {
+        if (pageSize == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(pageSize.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (Double.isNaN(value) || value < 1) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return (int) Math.min(MAX_PAGE_SIZE, Math.round(value));
+    }
+}
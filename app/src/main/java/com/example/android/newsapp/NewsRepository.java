@@ -0,0 +1,604 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * The single source of truth of the news shown by the app.
+ *
+ * The screens only ever read feeds from the {@link NewsCache} through {@link #getFeed(String)}.
+ * Requests to the server run on the {@link FetchPipeline} and only write into the cache;
+ * observers are told on the main thread when a feed changed and read it again. Without a
+ * connection the cached news keep being served, marked as stale. The requests of a feed nobody
+ * shows anymore are cancelled with {@link #cancel(String)}.
+ *
+ * A feed ordered by newest is refreshed incrementally once it holds news: only the news
+ * published since the newest one stored are asked for and put at the head of the feed.
+ */
+public final class NewsRepository {
+
+    private static final String LOG_TAG = NewsRepository.class.getName();
+
+    /** Query parameter selecting the page of the results */
+    private static final String PAGE_PARAMETER = "page";
+
+    /** Query parameter asking only for the news published since the given time */
+    private static final String FROM_DATE_PARAMETER = "from-date";
+
+    /** Number of news per page when the query does not say */
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    private static NewsRepository sInstance;
+
+    /**
+     * Told when the stored news of a feed or the state of its requests changed.
+     */
+    public interface Observer {
+        /**
+         * Called on the main thread, read the feed again with {@link #getFeed(String)}.
+         */
+        void onFeedChanged(String url);
+    }
+
+    /**
+     * Tells whether the device can reach the network right now.
+     */
+    interface Connectivity {
+        boolean isConnected();
+    }
+
+    /**
+     * The stored news of a feed together with how current they are.
+     */
+    public static final class Feed {
+        private final List<News> mNews;
+        private final long mSavedAt;
+        private final boolean mRefreshing;
+        private final boolean mRefreshFailed;
+        private final boolean mHasMorePages;
+
+        Feed(List<News> news, long savedAt, boolean refreshing, boolean refreshFailed,
+             boolean hasMorePages) {
+            mNews = news;
+            mSavedAt = savedAt;
+            mRefreshing = refreshing;
+            mRefreshFailed = refreshFailed;
+            mHasMorePages = hasMorePages;
+        }
+
+        /** Returns the stored news, empty if nothing has been fetched yet */
+        public List<News> getNews() {
+            return mNews;
+        }
+
+        /** Returns when the news were last confirmed by the server, 0 if never */
+        public long getSavedAt() {
+            return mSavedAt;
+        }
+
+        /** Returns true while the server is being asked for the current news */
+        public boolean isRefreshing() {
+            return mRefreshing;
+        }
+
+        /** Returns true if the last attempt to reach the server failed */
+        public boolean hasRefreshFailed() {
+            return mRefreshFailed;
+        }
+
+        /** Returns false once a page came back empty, there is nothing more to load */
+        public boolean hasMorePages() {
+            return mHasMorePages;
+        }
+
+        /** Returns true if the news are too old to be shown without asking the server */
+        public boolean isStale(long now) {
+            return mSavedAt == 0 || now - mSavedAt >= NewsCache.FRESH_MILLIS;
+        }
+    }
+
+    /**
+     * What the repository is doing for a feed, by normalized URL. Guarded by the repository.
+     */
+    private static final class FeedState {
+        boolean mRefreshing;
+        boolean mLoadingPage;
+        boolean mRefreshFailed;
+        boolean mHasMorePages = true;
+        int mLoadedPage = 1;
+        FetchPipeline.Call<Integer> mRefreshCall;
+        FetchPipeline.Call<Integer> mPageCall;
+    }
+
+    /**
+     * The response to a request for the first page of a feed. It holds either the news
+     * published since the newest stored one or the whole first page.
+     */
+    private static final class FirstPage {
+        final List<News> mNewerNews;
+        final NewsCache.Entry mEntry;
+
+        FirstPage(List<News> newerNews, NewsCache.Entry entry) {
+            mNewerNews = newerNews;
+            mEntry = entry;
+        }
+    }
+
+    private final NewsCache mCache;
+    private final NewsFetcher mFetcher;
+    private final Connectivity mConnectivity;
+    private final Clock mClock;
+
+    /** Runs the requests */
+    private final FetchPipeline mPipeline;
+
+    /** Requests may end at the same time, their news are merged into the cache one at a time */
+    private final Object mStoreLock = new Object();
+
+    /** Delivers the changes to the observers */
+    private final Executor mCallbackExecutor;
+
+    private final Map<String, FeedState> mStates = new HashMap<>();
+    private final List<Observer> mObservers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Return the repository shared by the whole app.
+     */
+    public static synchronized NewsRepository getInstance(Context context) {
+        if (sInstance == null) {
+            final ConnectivityManager connectivityManager = (ConnectivityManager)
+                    context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            sInstance = new NewsRepository(NewsCache.getInstance(context), NewsFetcher.getInstance(),
+                    new Connectivity() {
+                        @Override
+                        public boolean isConnected() {
+                            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+                            return networkInfo != null && networkInfo.isConnected();
+                        }
+                    }, Clock.SYSTEM, FetchPipeline.getInstance(), new Executor() {
+                        @Override
+                        public void execute(Runnable runnable) {
+                            mainHandler.post(runnable);
+                        }
+                    });
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsRepository}.
+     *
+     * @param cache stores the news
+     * @param fetcher asks the server
+     * @param connectivity tells whether asking the server is worth it
+     * @param clock tells how old the stored news are
+     * @param pipeline runs the requests
+     * @param callbackExecutor tells the observers
+     */
+    NewsRepository(NewsCache cache, NewsFetcher fetcher, Connectivity connectivity, Clock clock,
+                   FetchPipeline pipeline, Executor callbackExecutor) {
+        mCache = cache;
+        mFetcher = fetcher;
+        mConnectivity = connectivity;
+        mClock = clock;
+        mPipeline = pipeline;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    public void registerObserver(Observer observer) {
+        mObservers.add(observer);
+    }
+
+    public void unregisterObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    /**
+     * Return the stored news of the feed. This reads the disk, call it on a background thread.
+     */
+    public Feed getFeed(String url) {
+        NewsCache.Entry entry = mCache.get(url);
+        List<News> news = entry == null ? Collections.<News>emptyList() : entry.getNews();
+        long savedAt = entry == null ? 0 : entry.getSavedAt();
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            return new Feed(news, savedAt, state.mRefreshing, state.mRefreshFailed,
+                    state.mHasMorePages && !news.isEmpty());
+        }
+    }
+
+    /**
+     * Ask the server for the current news of the feed in the background. Without a connection
+     * the feed is only marked as failed, so its stored news are shown as stale.
+     *
+     * @return true if the server is being asked, false if there is no connection
+     */
+    public boolean refresh(String url) {
+        // The user waits for the news of the screen
+        return refresh(url, FetchPipeline.Priority.USER);
+    }
+
+    /**
+     * Ask the server for the current news of the feed like {@link #refresh(String)}, at the
+     * given priority of the {@link FetchPipeline}.
+     */
+    boolean refresh(final String url, FetchPipeline.Priority priority) {
+        boolean connected = mConnectivity.isConnected();
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            if (state.mRefreshing) {
+                return true;
+            }
+            state.mRefreshing = connected;
+            state.mRefreshFailed = !connected;
+        }
+        notifyChanged(url);
+        if (!connected) {
+            return false;
+        }
+
+        FetchPipeline.Call<Integer> call = mPipeline.submit(new FetchPipeline.Stages<FirstPage, Integer>() {
+            @Override
+            public FirstPage fetch(FetchPipeline.Call<?> call) {
+                return fetchFirstPage(url, call);
+            }
+
+            @Override
+            public Integer postProcess(FirstPage firstPage) throws IOException {
+                return storeFirstPage(url, firstPage);
+            }
+        }, priority, new FetchPipeline.Callback<Integer>() {
+            @Override
+            public void onResult(Integer loadedPages) {
+                onRefreshEnded(url, loadedPages);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                Log.e(LOG_TAG, "Problem storing " + url, e);
+                onRefreshEnded(url, -1);
+            }
+
+            @Override
+            public void onCancelled() {
+                onRefreshEnded(url, null);
+            }
+        });
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            // Unless it already ended
+            if (state.mRefreshing) {
+                state.mRefreshCall = call;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the request of the running refresh of the feed, or null if there is none.
+     */
+    synchronized FetchPipeline.Call<Integer> getRefreshCall(String url) {
+        return stateOf(url).mRefreshCall;
+    }
+
+    /**
+     * Update the state of the feed once its refresh ended.
+     *
+     * @param loadedPages is the number of pages the stored feed holds, -1 if the server could
+     * not be reached, or null if the refresh was cancelled
+     */
+    private void onRefreshEnded(String url, Integer loadedPages) {
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            state.mRefreshing = false;
+            state.mRefreshCall = null;
+            if (loadedPages != null) {
+                state.mRefreshFailed = loadedPages < 0;
+                if (loadedPages >= 0) {
+                    // Paging goes on after the pages still stored
+                    state.mLoadedPage = loadedPages;
+                    state.mHasMorePages = true;
+                }
+            }
+        }
+        notifyChanged(url);
+    }
+
+    /**
+     * Fetch the page after the last loaded one in the background and append its news to the
+     * feed. Nothing happens while the feed is being fetched or when its last page was reached.
+     *
+     * @return true if a new page is being loaded
+     */
+    public boolean loadNextPage(final String url) {
+        final int page;
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            if (state.mRefreshing || state.mLoadingPage || !state.mHasMorePages
+                    || !mConnectivity.isConnected()) {
+                return false;
+            }
+            state.mLoadingPage = true;
+            page = state.mLoadedPage + 1;
+        }
+
+        // The user will scroll to the page soon, but is not waiting for it yet
+        final String pageUrl = Uri.parse(url).buildUpon()
+                .appendQueryParameter(PAGE_PARAMETER, String.valueOf(page))
+                .build().toString();
+        FetchPipeline.Call<Integer> call = mPipeline.submit(new FetchPipeline.Stages<List<News>, Integer>() {
+            @Override
+            public List<News> fetch(FetchPipeline.Call<?> call) {
+                return mFetcher.fetch(pageUrl, call);
+            }
+
+            @Override
+            public Integer postProcess(List<News> pageNews) {
+                return appendPage(url, page, pageNews);
+            }
+        }, FetchPipeline.Priority.PREFETCH, new FetchPipeline.Callback<Integer>() {
+            @Override
+            public void onResult(Integer pageSize) {
+                onPageEnded(url, page, pageSize);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                Log.e(LOG_TAG, "Problem storing " + pageUrl, e);
+                onPageEnded(url, page, -1);
+            }
+
+            @Override
+            public void onCancelled() {
+                onPageEnded(url, page, null);
+            }
+        });
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            if (state.mLoadingPage) {
+                state.mPageCall = call;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Update the state of the feed once the request for a page ended.
+     *
+     * @param pageSize is the number of news on the page, 0 past the last page, -1 if the
+     * server could not be reached, or null if the request was cancelled
+     */
+    private void onPageEnded(String url, int page, Integer pageSize) {
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            state.mLoadingPage = false;
+            state.mPageCall = null;
+            if (pageSize != null) {
+                if (pageSize >= 0) {
+                    state.mLoadedPage = page;
+                }
+                // Past the last page, or the server could not be reached
+                state.mHasMorePages = pageSize > 0;
+            }
+        }
+        notifyChanged(url);
+    }
+
+    /**
+     * Stop the requests of the feed, once nobody waits for its news anymore. A response that
+     * is being read has its connection closed, so the rest of it is not downloaded.
+     */
+    public void cancel(String url) {
+        FetchPipeline.Call<Integer> refreshCall;
+        FetchPipeline.Call<Integer> pageCall;
+        synchronized (this) {
+            FeedState state = stateOf(url);
+            refreshCall = state.mRefreshCall;
+            pageCall = state.mPageCall;
+        }
+        if (refreshCall != null) {
+            refreshCall.cancel();
+        }
+        if (pageCall != null) {
+            pageCall.cancel();
+        }
+    }
+
+    private void notifyChanged(final String url) {
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Observer observer : mObservers) {
+                    observer.onFeedChanged(url);
+                }
+            }
+        });
+    }
+
+    private FeedState stateOf(String url) {
+        String key = NewsCache.normalizeUrl(url);
+        FeedState state = mStates.get(key);
+        if (state == null) {
+            state = new FeedState();
+            mStates.put(key, state);
+        }
+        return state;
+    }
+
+    /**
+     * Ask the server for the current first page of the feed. Once we hold news of a feed
+     * ordered by newest, only the news published since the newest of them are asked for.
+     * Return null if the server could not be reached.
+     */
+    private FirstPage fetchFirstPage(String url, FetchPipeline.Call<?> call) {
+        NewsCache.Entry stored = mCache.get(url);
+
+        // Only ask for what is new when we already hold news
+        Uri uri = Uri.parse(url);
+        if (stored != null && !stored.getNews().isEmpty()
+                && "newest".equals(uri.getQueryParameter("order-by"))) {
+            long newest = News.NO_DATE;
+            for (News news : stored.getNews()) {
+                newest = Math.max(newest, news.getNewsDate());
+            }
+            if (newest != News.NO_DATE) {
+                String newerUrl = uri.buildUpon()
+                        .appendQueryParameter(FROM_DATE_PARAMETER, formatDate(newest))
+                        .build().toString();
+                List<News> newer = mFetcher.fetch(newerUrl, call);
+                if (newer == null) {
+                    return null;
+                }
+                // With more new news than fit in one page some may be missing in between, the
+                // feed is then fetched from the start
+                if (newer.size() < parsePageSize(uri)) {
+                    return new FirstPage(newer, null);
+                }
+            }
+        }
+
+        // The request is conditional on the stored entry, so an unchanged feed is not downloaded
+        NewsCache.Entry entry = mFetcher.fetch(url, stored, NewsFetcher.DEFAULT_DEADLINE_MILLIS, call);
+        if (entry == null) {
+            return null;
+        }
+        // A query without results is answered all the same, the feed is just empty
+        return new FirstPage(null, entry);
+    }
+
+    /**
+     * Store the first page returned by {@link #fetchFirstPage(String, FetchPipeline.Call)}.
+     * Newer news are put at the head of the stored ones. Return the number of pages the stored
+     * feed holds, which an unchanged or merged feed keeps, or -1 if the server could not be
+     * reached.
+     */
+    private int storeFirstPage(String url, FirstPage firstPage) {
+        if (firstPage == null) {
+            return -1;
+        }
+        int pageSize = parsePageSize(Uri.parse(url));
+        synchronized (mStoreLock) {
+            long now = mClock.currentTimeMillis();
+            NewsCache.Entry stored = mCache.get(url);
+            if (firstPage.mEntry != null) {
+                // An unchanged feed comes back with all the pages stored before
+                mCache.put(url, firstPage.mEntry.withSavedAt(now));
+                return pagesOf(firstPage.mEntry.getNews(), pageSize);
+            }
+
+            // The from-date is inclusive, so the newest news we hold comes back as well
+            List<News> loaded = stored == null ? Collections.<News>emptyList() : stored.getNews();
+            Set<String> loadedUrls = new HashSet<>();
+            for (News news : loaded) {
+                loadedUrls.add(news.getNewsUrl());
+            }
+            List<News> merged = new ArrayList<>(firstPage.mNewerNews.size() + loaded.size());
+            for (News news : firstPage.mNewerNews) {
+                if (loadedUrls.add(news.getNewsUrl())) {
+                    merged.add(news);
+                }
+            }
+            if (merged.isEmpty() && stored != null) {
+                // Nothing new, the stored news are current again
+                mCache.put(url, stored.withSavedAt(now));
+                return pagesOf(loaded, pageSize);
+            }
+            merged.addAll(loaded);
+            // The validators of the full page do not describe the merged list anymore
+            mCache.put(url, new NewsCache.Entry(merged, now, null, null));
+            return pagesOf(merged, pageSize);
+        }
+    }
+
+    /**
+     * Return the number of whole pages the given news fill, at least the first one. The next
+     * page then starts with the news after the stored ones, even once newer news pushed them
+     * down the feed.
+     */
+    private static int pagesOf(List<News> news, int pageSize) {
+        return Math.max(1, news.size() / pageSize);
+    }
+
+    /**
+     * Append the new news of the given page to the stored feed. Return the number of news on
+     * the page, 0 past the last page, or -1 if the server could not be reached.
+     *
+     * @param pageNews are the news of the page, or null if they could not be fetched
+     */
+    private int appendPage(String url, int page, List<News> pageNews) {
+        if (pageNews == null) {
+            return -1;
+        }
+        synchronized (mStoreLock) {
+            NewsCache.Entry stored = mCache.get(url);
+            if (stored == null || pageNews.isEmpty()) {
+                return 0;
+            }
+
+            // New articles shift older ones onto the next page, so skip the ones we already have
+            List<News> loaded = stored.getNews();
+            Set<String> loadedUrls = new HashSet<>();
+            for (News news : loaded) {
+                loadedUrls.add(news.getNewsUrl());
+            }
+            List<News> news = new ArrayList<>(loaded.size() + pageNews.size());
+            news.addAll(loaded);
+            for (News item : pageNews) {
+                if (loadedUrls.add(item.getNewsUrl())) {
+                    news.add(item);
+                }
+            }
+            if (news.size() > loaded.size()) {
+                // The first page is unchanged, so its validators and age still hold
+                mCache.put(url, new NewsCache.Entry(news, stored.getSavedAt(), stored.getETag(),
+                        stored.getLastModified()));
+            } else {
+                Log.d(LOG_TAG, "Page " + page + " held no news we do not have");
+            }
+            return pageNews.size();
+        }
+    }
+
+    /**
+     * Return the time as an ISO 8601 UTC date, the format of the from-date parameter.
+     */
+    static String formatDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    private static int parsePageSize(Uri uri) {
+        String pageSize = uri.getQueryParameter("page-size");
+        if (pageSize != null) {
+            try {
+                return Integer.parseInt(pageSize);
+            } catch (NumberFormatException e) {
+                // Fall back to the default of the API
+            }
+        }
+        return DEFAULT_PAGE_SIZE;
+    }
+}
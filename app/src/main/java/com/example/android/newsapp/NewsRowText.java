@@ -0,0 +1,49 @@
+package com.example.android.newsapp;
+
+/**
+ * The texts of one news row, ready to be set on its TextViews.
+ *
+ * They are built by {@link NewsFormatter} in the background and kept by the {@link NewsAdapter}
+ * next to its news, so binding a row on the main thread only assigns them. The date is relative
+ * to when the texts were built, so they only hold until it would read differently, and are then
+ * built again while the row is bound. Loading the thumbnail of the row still allocates.
+ */
+public final class NewsRowText {
+
+    private final String mTitle;
+    private final String mSection;
+    private final String mAuthor;
+    private final CharSequence mDate;
+    private final long mValidUntil;
+
+    NewsRowText(String title, String section, String author, CharSequence date, long validUntil) {
+        mTitle = title;
+        mSection = section;
+        mAuthor = author;
+        mDate = date;
+        mValidUntil = validUntil;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getSection() {
+        return mSection;
+    }
+
+    public String getAuthor() {
+        return mAuthor;
+    }
+
+    public CharSequence getDate() {
+        return mDate;
+    }
+
+    /**
+     * Return false once the relative date, such as "3 hours ago", is out of date.
+     */
+    public boolean isCurrent(long now) {
+        return now < mValidUntil;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.android.newsapp;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefetches the news feeds in the background while the device is on an unmetered network
+ * or charging, so opening the app only reads the {@link NewsCache}. The bodies of the first
+ * news of every feed are saved for offline reading too, if the settings allow it.
+ *
+ * JobScheduler needs API 21, on older devices the feeds are only loaded by the app itself.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class NewsSyncJobService extends JobService {
+
+    /**
+     * One job per set of conditions, JobScheduler only combines conditions with "and". The
+     * feeds one of them synced are skipped by the other until the next period.
+     */
+    private static final int UNMETERED_JOB_ID = 1001;
+    private static final int CHARGING_JOB_ID = 1002;
+
+    /** How often the feeds are prefetched */
+    private static final long SYNC_INTERVAL_MILLIS = 3 * 60 * 60 * 1000L;
+
+    /** How long a sync waits for the bodies of the news */
+    private static final long PREFETCH_TIMEOUT_MILLIS = 60 * 1000L;
+
+    /** Thread running the current sync */
+    private Thread mSyncThread;
+
+    /**
+     * Schedule the periodic prefetch of the feeds, unless it is already scheduled.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+
+        boolean unmeteredScheduled = false;
+        boolean chargingScheduled = false;
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            unmeteredScheduled |= job.getId() == UNMETERED_JOB_ID;
+            chargingScheduled |= job.getId() == CHARGING_JOB_ID;
+        }
+
+        ComponentName service = new ComponentName(context, NewsSyncJobService.class);
+        if (!unmeteredScheduled) {
+            jobScheduler.schedule(new JobInfo.Builder(UNMETERED_JOB_ID, service)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setPeriodic(SYNC_INTERVAL_MILLIS)
+                    .setPersisted(true)
+                    .build());
+        }
+        if (!chargingScheduled) {
+            jobScheduler.schedule(new JobInfo.Builder(CHARGING_JOB_ID, service)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                    .setRequiresCharging(true)
+                    .setPeriodic(SYNC_INTERVAL_MILLIS)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    /**
+     * Return the feeds the app shows, these are the ones prefetched.
+     */
+    static List<String> getFeedUrls(Context context) {
+        return Collections.singletonList(NewsQuery.fromPreferences(context).toUrl());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final NewsRepository repository = NewsRepository.getInstance(this);
+        final NewsSyncer syncer = new NewsSyncer(repository, Clock.SYSTEM);
+        final List<String> feedUrls = getFeedUrls(this);
+        final ArticlePrefetcher prefetcher = ArticlePrefetcher.getInstance(this);
+        // All feeds are fetched together, so the radio wakes up once per sync
+        mSyncThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean upToDate = syncer.sync(feedUrls, SYNC_INTERVAL_MILLIS);
+                // The radio is still up, save the bodies the user is likely to open first
+                prefetchArticles(repository, prefetcher, feedUrls);
+                // Try again later if a feed could not be fetched
+                jobFinished(params, !upToDate);
+            }
+        }, "news-sync");
+        mSyncThread.start();
+        return true;
+    }
+
+    /**
+     * Save the bodies of the first news of every feed and wait until they are saved.
+     */
+    private static void prefetchArticles(NewsRepository repository, ArticlePrefetcher prefetcher,
+                                         List<String> feedUrls) {
+        List<String> newsUrls = new ArrayList<>();
+        for (String feedUrl : feedUrls) {
+            List<News> news = repository.getFeed(feedUrl).getNews();
+            for (int i = 0; i < news.size() && i < ArticlePrefetcher.MAX_ARTICLES; i++) {
+                newsUrls.add(news.get(i).getNewsUrl());
+            }
+        }
+        FetchPipeline.Call<Integer> call = prefetcher.prefetch(newsUrls, FetchPipeline.Priority.BACKGROUND);
+        try {
+            call.await(PREFETCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // The job was stopped
+        } finally {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The conditions are not met anymore, stop and run again when they are
+        if (mSyncThread != null) {
+            mSyncThread.interrupt();
+        }
+        return true;
+    }
+}
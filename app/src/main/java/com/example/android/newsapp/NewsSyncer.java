@@ -0,0 +1,88 @@
+package com.example.android.newsapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the cached news of a set of feeds in one go, so the app finds them on disk when
+ * it is opened.
+ *
+ * Feeds whose cached news are still fresh are skipped. All others are refreshed through the
+ * {@link NewsRepository} at background priority, so they are merged with the pages already
+ * stored and the screens showing them are told, like a refresh asked for by the user.
+ */
+public final class NewsSyncer {
+
+    /** How long a sync waits for the slowest feed */
+    private static final long SYNC_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final NewsRepository mRepository;
+    private final Clock mClock;
+
+    /**
+     * Constructs a new {@link NewsSyncer}.
+     *
+     * @param repository refreshes and stores the feeds
+     * @param clock tells whether cached news are still fresh
+     */
+    public NewsSyncer(NewsRepository repository, Clock clock) {
+        mRepository = repository;
+        mClock = clock;
+    }
+
+    /**
+     * Bring the cached news of all given feeds up to date. This blocks, call it on a
+     * background thread.
+     *
+     * @param feedUrls are the Guardian queries to refresh
+     * @return true if every feed is up to date, false if some could not be fetched
+     */
+    public boolean sync(List<String> feedUrls) {
+        return sync(feedUrls, NewsCache.FRESH_MILLIS);
+    }
+
+    /**
+     * Bring the cached news of the given feeds up to date like {@link #sync(List)}, skipping
+     * the feeds confirmed by the server less than the given time ago.
+     *
+     * @param feedUrls are the Guardian queries to refresh
+     * @param maxAgeMillis is how old the cached news of a feed may be
+     * @return true if every feed is up to date, false if some could not be fetched
+     */
+    public boolean sync(List<String> feedUrls, long maxAgeMillis) {
+        long now = mClock.currentTimeMillis();
+        boolean upToDate = true;
+        List<FetchPipeline.Call<Integer>> calls = new ArrayList<>();
+        for (String feedUrl : feedUrls) {
+            long savedAt = mRepository.getFeed(feedUrl).getSavedAt();
+            if (savedAt != 0 && now - savedAt < maxAgeMillis) {
+                continue;
+            }
+            if (!mRepository.refresh(feedUrl, FetchPipeline.Priority.BACKGROUND)) {
+                // No connection
+                upToDate = false;
+                continue;
+            }
+            // A refresh the user started already is waited for as well
+            FetchPipeline.Call<Integer> call = mRepository.getRefreshCall(feedUrl);
+            if (call != null) {
+                calls.add(call);
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SYNC_TIMEOUT_MILLIS);
+        try {
+            for (FetchPipeline.Call<Integer> call : calls) {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                // The result is the number of pages stored, null if the refresh failed
+                Integer loadedPages = call.await(remaining, TimeUnit.NANOSECONDS) ? call.getResult() : null;
+                upToDate &= loadedPages != null && loadedPages >= 0;
+            }
+        } catch (InterruptedException e) {
+            // The sync was stopped, the refreshes go on in the repository
+            return false;
+        }
+        return upToDate;
+    }
+}
@@ -1,29 +1,29 @@
 package com.example.android.newsapp;
 
-import android.text.TextUtils;
+import android.util.JsonToken;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
-import static com.example.android.newsapp.NewsActivity.LOG_TAG;
 /**
  * Helper methods related to requesting and receiving News data from Guardian.
  */
 public final class QueryUtils {
 
+    private static final String LOG_TAG = QueryUtils.class.getName();
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -33,27 +33,65 @@ public final class QueryUtils {
     private QueryUtils() {
     }
 
+    /** Timeout of a single request when the caller has no deadline of its own */
+    private static final int DEFAULT_TIMEOUT_MILLIS = 15000;
+
     /**
      * Query the Guardian dataset and return a list of {@link News} objects.
      */
     public static List<News> fetchNewsData(String requestUrl){
+        NewsCache.Entry entry = fetchNewsData(requestUrl, null);
+        return entry == null ? null : entry.getNews();
+    }
 
-        // Create URL object
-        URL url = createUrl(requestUrl);
+    /**
+     * Query the Guardian dataset and return the {@link News} objects together with the
+     * validators of the response.
+     *
+     * When a previous entry is given, the request is made conditional on it. If the server
+     * answers that nothing has changed, the news of that entry are returned without
+     * downloading or parsing the body again.
+     */
+    public static NewsCache.Entry fetchNewsData(String requestUrl, NewsCache.Entry previous){
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP request to the URL and parse the JSON response as it arrives
+        // into a list of {@link News}s
+        NewsCache.Entry entry = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            entry = requestNewsData(requestUrl, previous, DEFAULT_TIMEOUT_MILLIS);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem making the HTTP request.", e);
         }
 
-        // Extract relevant fields from the JSON response and create a list of {@link News}s
-        List<News> newsList = extractFeatureFromJson(jsonResponse);
-
         // Return the list of {@link News}s
-        return newsList;
+        return entry;
+    }
+
+    /**
+     * Make a single attempt to query the Guardian dataset, like
+     * {@link #fetchNewsData(String, NewsCache.Entry)}, but report failures to the caller.
+     *
+     * @param timeoutMillis bounds connecting and every read of the response
+     * @throws HttpStatusException if the server answered with an error status
+     * @throws IOException if the server could not be reached or the response not be read
+     */
+    static NewsCache.Entry requestNewsData(String requestUrl, NewsCache.Entry previous,
+                                           int timeoutMillis) throws IOException{
+        return requestNewsData(requestUrl, previous, timeoutMillis, null);
+    }
+
+    /**
+     * Make a single attempt like {@link #requestNewsData(String, NewsCache.Entry, int)} for a
+     * call of the {@link FetchPipeline}. Cancelling the call closes the connection and stops
+     * the body from being read and parsed any further.
+     *
+     * @param call is the fetch the request is made for, or null
+     */
+    static NewsCache.Entry requestNewsData(String requestUrl, NewsCache.Entry previous,
+                                           int timeoutMillis, FetchPipeline.Call<?> call) throws IOException{
+        // Create URL object
+        URL url = createUrl(requestUrl);
+        return makeHttpRequest(url, previous, timeoutMillis, call);
     }
 
 
@@ -73,152 +111,416 @@ public final class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL and return the list of {@link News} parsed
+     * straight from the response body, along with the validators the server sent.
      */
-    private static String makeHttpRequest(URL url) throws IOException{
-        String jsonResponse = "";
+    private static NewsCache.Entry makeHttpRequest(URL url, NewsCache.Entry previous,
+                                                   int timeoutMillis, FetchPipeline.Call<?> call) throws IOException{
+        NewsCache.Entry entry = null;
 
     // if url is empty, return earlier
         if(url == null){
-            return jsonResponse;
+            return entry;
         }
 
-        // Initialize variables for the HTTP connection and for the InputStream
-        HttpURLConnection urlConnection = null;
+        // The connection comes from the shared client, so its socket is reused by later requests
+        NewsHttpClient client = NewsHttpClient.getInstance();
+        final HttpURLConnection urlConnection = client.open(url, timeoutMillis);
+        // Closed when the call is cancelled, so a read blocked on the network returns
+        Closeable disconnect = new Closeable() {
+            @Override
+            public void close() {
+                urlConnection.disconnect();
+            }
+        };
         InputStream inputStream = null;
+        // Only a response read to its end leaves the socket ready for the next request
+        boolean reusable = false;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
+            if (call != null) {
+                call.attach(disconnect);
+            }
             urlConnection.setRequestMethod("GET");
-            // Send a request to connect
+            // Ask for a compressed body, it is decoded below
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+            // Only ask for the body again if it changed since the previous response
+            if (previous != null) {
+                if (previous.getETag() != null) {
+                    urlConnection.setRequestProperty("If-None-Match", previous.getETag());
+                }
+                if (previous.getLastModified() != null) {
+                    urlConnection.setRequestProperty("If-Modified-Since", previous.getLastModified());
+                }
+            }
+            // Send a request to connect, this is quick when a pooled socket is reused
+            long connectStart = Metrics.start();
             urlConnection.connect();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if(urlConnection.getResponseCode() == 200){
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            Metrics.stop(Metrics.CONNECT, connectStart);
+
+            long firstByteStart = Metrics.start();
+            int responseCode = urlConnection.getResponseCode();
+            Metrics.stop(Metrics.FIRST_BYTE, firstByteStart);
+            long now = System.currentTimeMillis();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null) {
+                // Nothing changed, so the news we already have are still current
+                entry = new NewsCache.Entry(previous.getNews(), now,
+                        headerOrDefault(urlConnection, "ETag", previous.getETag()),
+                        headerOrDefault(urlConnection, "Last-Modified", previous.getLastModified()));
+            } else if(responseCode == HttpURLConnection.HTTP_OK){
+                // If the request was successful (response code 200),
+                // then parse the input stream while it is being read.
+                InputStream body = urlConnection.getInputStream();
+                if (call != null) {
+                    // Reading stops at the next read once the call is cancelled
+                    body = call.read(body);
+                }
+                body = Metrics.timeReads(body);
+                inputStream = body;
+                if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                    inputStream = new GZIPInputStream(inputStream);
+                }
+                long parseStart = Metrics.start();
+                List<News> newsList = extractFeatureFromStream(inputStream);
+                Metrics.stopParse(parseStart, body);
+                Metrics.count(Metrics.ITEM_COUNT, newsList.size());
+                entry = new NewsCache.Entry(newsList, now,
+                        urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"));
             } else {
-                Log.e(LOG_TAG,"Error response code " + urlConnection.getResponseCode());
+                // The error body is read too, so the socket can be reused
+                inputStream = urlConnection.getErrorStream();
+                reusable = true;
+                // Let the caller decide whether the request is worth another attempt
+                throw new HttpStatusException(responseCode,
+                        HttpStatusException.parseRetryAfter(urlConnection.getHeaderField("Retry-After"),
+                                System.currentTimeMillis()));
             }
-        } catch (IOException e) {
-            // If the connection was not established, print it to the log
-            Log.e(LOG_TAG, "Problem retrieving the Guardian JSON results.", e);
+            reusable = true;
         } finally {
-
-            // Disconnect the HTTP connection if it has been not yet disconnected
-            if(urlConnection != null){
-                urlConnection.disconnect();
-            }
-            if(inputStream != null){
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
+            if (call != null) {
+                call.detach(disconnect);
             }
+            // Read the rest of the body and give the connection back, it is only
+            // disconnected if the response could not be read to its end
+            client.release(urlConnection, inputStream, reusable);
         }
-        return jsonResponse;
+        return entry;
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
+     * Ask the Guardian for the bodies of some news, with show-fields=body, and return them
+     * as HTML by the URL of their news. News without a body are left out.
+     *
+     * @param call is the fetch the request is made for, cancelling it closes the connection
+     * @throws HttpStatusException if the server answered with an error status
+     * @throws IOException if the server could not be reached or the response not be read
      */
-    private static String readFromStream(InputStream inputStream) throws IOException{
-        StringBuilder output = new StringBuilder();
-        if(inputStream != null){
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-            // Append the data of the BufferedReader line by line to the StringBuilder
-            String line = bufferedReader.readLine();
-            while(line != null){
-                output.append(line);
-                line = bufferedReader.readLine();
+    static Map<String, String> requestArticleBodies(String requestUrl, int timeoutMillis,
+                                                    FetchPipeline.Call<?> call) throws IOException{
+        URL url = createUrl(requestUrl);
+        if (url == null) {
+            return new LinkedHashMap<>();
+        }
+
+        NewsHttpClient client = NewsHttpClient.getInstance();
+        final HttpURLConnection urlConnection = client.open(url, timeoutMillis);
+        Closeable disconnect = new Closeable() {
+            @Override
+            public void close() {
+                urlConnection.disconnect();
             }
+        };
+        InputStream inputStream = null;
+        boolean reusable = false;
+        try {
+            call.attach(disconnect);
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                inputStream = urlConnection.getErrorStream();
+                reusable = true;
+                throw new HttpStatusException(responseCode,
+                        HttpStatusException.parseRetryAfter(urlConnection.getHeaderField("Retry-After"),
+                                System.currentTimeMillis()));
+            }
+            // The bytes read are counted by the call, they are what the prefetch costs
+            inputStream = call.read(urlConnection.getInputStream());
+            if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            Map<String, String> bodies = extractBodiesFromStream(inputStream);
+            reusable = true;
+            return bodies;
+        } finally {
+            call.detach(disconnect);
+            client.release(urlConnection, inputStream, reusable);
         }
-        // Convert the output into String and return it
-        return output.toString();
     }
 
     /**
-     * Return a list of {@link News} objects that has been built up from
-     * parsing the given JSON response.
+     * Return the value of the given response header, or the fallback if it is missing.
      */
-    private static List<News> extractFeatureFromJson(String newsJson){
-        // If the JSON string is empty or null, then return early.
-        if(TextUtils.isEmpty(newsJson)){
-            return null;
-        }
+    private static String headerOrDefault(HttpURLConnection urlConnection, String name, String fallback){
+        String value = urlConnection.getHeaderField(name);
+        return value != null ? value : fallback;
+    }
+
+    /** Names of the Guardian JSON we read, compared with the bytes of the body */
+    private static final byte[][] RESPONSE_NAMES = names("response");
+    private static final byte[][] RESULTS_NAMES = names("results");
+    private static final byte[][] NEWS_NAMES =
+            names("webTitle", "sectionName", "webPublicationDate", "webUrl", "fields", "tags");
+    private static final byte[][] THUMBNAIL_NAMES = names("thumbnail");
+    private static final byte[][] TAG_NAMES = names("webTitle");
+    private static final byte[][] BODY_NEWS_NAMES = names("webUrl", "fields");
+    private static final byte[][] BODY_NAMES = names("body");
+
+    /** Indexes into {@link #NEWS_NAMES} */
+    private static final int WEB_TITLE = 0;
+    private static final int SECTION_NAME = 1;
+    private static final int WEB_PUBLICATION_DATE = 2;
+    private static final int WEB_URL = 3;
+    private static final int FIELDS = 4;
+    private static final int TAGS = 5;
 
+    /**
+     * Return a list of {@link News} objects parsed from the Guardian JSON in the given
+     * {@link InputStream}.
+     *
+     * The body is pulled token by token with a {@link ByteJsonReader}, so a {@link News} is
+     * built as soon as its entry in response.results has been read. The body is never decoded
+     * as a whole: names are matched on its bytes, every field we do not show is skipped
+     * without being decoded, and only the values we keep become strings.
+     *
+     * @throws MalformedJsonException if the body is malformed or cut short. The news read up
+     * to there are not returned, they would be cached as the whole feed together with the
+     * validators of the response.
+     */
+    static List<News> extractFeatureFromStream(InputStream inputStream) throws IOException{
         // Create an empty ArrayList that we can start adding News to
         List<News> newsList = new ArrayList<>();
 
-        // Try to parse the JSON response string. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
-        try{
-            String newsAuthor = "N/A";
-            JSONArray currentNewsAuthorArray;
-            JSONObject newsTag;
-
-            // Create a JSONObject from the JSON response string
-            JSONObject baseJsonResponse = new JSONObject(newsJson);
-
-            JSONObject response = baseJsonResponse.getJSONObject("response");
-
-            JSONArray results = response.getJSONArray("results");
-
-            for (int i = 0; i <results.length() ; i++) {
-
-                // Get a single News at position i within the list of News
-                JSONObject currentNews = results.getJSONObject(i);
-
-                // For a given News, extract the JSONObject associated with the key ,
-                // which represents a list of all properties for that News.
-
-                // Extract the News name (value) for the key "webTitle"
-                String title = currentNews.getString("webTitle");
-
-                // Extract the section name (value) for the key "sectionName"
-                String section = currentNews.getString("sectionName");
-
-                // Extract the date (value) for the key "webPublicationDate"
-                String date = currentNews.getString("webPublicationDate");
-
-                // Extract the url (value) for the key "webUrl"
-                String url = currentNews.getString("webUrl");
+        ByteJsonReader reader = new ByteJsonReader(inputStream);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName(RESPONSE_NAMES) == 0) {
+                    readResponse(reader, newsList);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            // Only a body read to its end holds the whole feed
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
 
-                // Extract the author (value) for the key "webTitle"
-                if (currentNews.has("tags")) {
-                    currentNewsAuthorArray = currentNews.getJSONArray("tags");
+        // Return the list of news
+        return newsList;
+    }
 
-                    if (currentNewsAuthorArray.length() > 0) {
-                        for (int j = 0; j < 1; j++) {
-                            newsTag = currentNewsAuthorArray.getJSONObject(j);
-                            if (newsTag.has("webTitle")) {
-                                newsAuthor = newsTag.getString("webTitle");
-                            }
+    /**
+     * Return the "body" field of every entry of a Guardian response by its "webUrl", in the
+     * order of the response. Like {@link #extractFeatureFromStream(InputStream)}, everything
+     * else is skipped without being decoded, and a malformed body keeps what was read so far.
+     */
+    static Map<String, String> extractBodiesFromStream(InputStream inputStream) throws IOException{
+        Map<String, String> bodies = new LinkedHashMap<>();
+        ByteJsonReader reader = new ByteJsonReader(inputStream);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName(RESPONSE_NAMES) != 0) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName(RESULTS_NAMES) == 0 && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            readBody(reader, bodies);
                         }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
                     }
                 }
+                reader.endObject();
+            }
+            reader.endObject();
+        } catch (MalformedJsonException e) {
+            Log.e(LOG_TAG, "Problem parsing the Guardian JSON bodies", e);
+        } finally {
+            reader.close();
+        }
+        return bodies;
+    }
 
-                // Create a new {@link News} object with the title, date, section, author
-                // and url from the JSON response.
-                News newsObject = new News(title, section, date, newsAuthor, url);
-
-                // Add the new {@link News} to the list of news.
-                newsList.add(newsObject);
+    /**
+     * Read a single entry of the "results" array and add its body to the map, if it has one.
+     */
+    private static void readBody(ByteJsonReader reader, Map<String, String> bodies) throws IOException{
+        String url = null;
+        String body = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int name = reader.nextName(BODY_NEWS_NAMES);
+            if (name == 0 && reader.peek() == JsonToken.STRING) {
+                url = reader.nextString();
+            } else if (name == 1 && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName(BODY_NAMES) == 0 && reader.peek() == JsonToken.STRING) {
+                        body = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
             }
+        }
+        reader.endObject();
+        if (url != null && body != null && !body.isEmpty()) {
+            bodies.put(url, body);
+        }
+    }
 
+    /**
+     * Read the "response" object and add every entry of its "results" array to the list.
+     */
+    private static void readResponse(ByteJsonReader reader, List<News> newsList) throws IOException{
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName(RESULTS_NAMES) == 0 && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    newsList.add(readNews(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
 
-        } catch (JSONException e) {
-            Log.e("QueryUtils","Problem parsing the earthquake JSON results", e);
+    /**
+     * Read a single entry of the "results" array into a {@link News} object.
+     */
+    private static News readNews(ByteJsonReader reader) throws IOException{
+        String title = null;
+        String section = null;
+        String date = null;
+        String url = null;
+        String thumbnail = null;
+        String author = "N/A";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int name = reader.nextName(NEWS_NAMES);
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case WEB_TITLE:
+                    title = reader.nextString();
+                    break;
+                case SECTION_NAME:
+                    section = reader.nextString();
+                    break;
+                case WEB_PUBLICATION_DATE:
+                    date = reader.nextString();
+                    break;
+                case WEB_URL:
+                    url = reader.nextString();
+                    break;
+                case FIELDS:
+                    thumbnail = readThumbnail(reader);
+                    break;
+                case TAGS:
+                    // The first contributor tag holds the author's name
+                    author = readFirstTagTitle(reader, author);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
         }
+        reader.endObject();
 
-        // Return the list of news
-        return newsList;
+        // Create a new {@link News} object with the title, section, author, date,
+        // url and thumbnail from the JSON response.
+        return new News(title, section, author, News.parseDate(date), url, thumbnail);
+    }
+
+    /**
+     * Return the "thumbnail" of a "fields" object, or null when there is none.
+     */
+    private static String readThumbnail(ByteJsonReader reader) throws IOException{
+        String thumbnail = null;
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName(THUMBNAIL_NAMES) == 0 && reader.peek() == JsonToken.STRING) {
+                thumbnail = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return thumbnail;
     }
 
+    /**
+     * Return the "webTitle" of the first object in a "tags" array, or the fallback
+     * when there is none.
+     */
+    private static String readFirstTagTitle(ByteJsonReader reader, String fallback) throws IOException{
+        String title = fallback;
+        boolean first = true;
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return fallback;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (first && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName(TAG_NAMES) == 0 && reader.peek() == JsonToken.STRING) {
+                        title = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+            first = false;
+        }
+        reader.endArray();
+        return title;
+    }
 
+    /**
+     * Return the UTF-8 bytes of the given names.
+     */
+    private static byte[][] names(String... names) {
+        Charset utf8 = Charset.forName("UTF-8");
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            bytes[i] = names[i].getBytes(utf8);
+        }
+        return bytes;
+    }
 }
@@ -0,0 +1,151 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.text.Html;
+import android.text.method.LinkMovementMethod;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+import com.example.ola.newsapp1.R;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows the body of a news saved by the {@link ArticlePrefetcher}, in the app and without
+ * the network.
+ *
+ * The body is read from the {@link ArticleStore} and turned from HTML into text in the
+ * background, which takes a few milliseconds, so it is on screen within the first frames after
+ * the tap. A body deleted from the store in the meantime is opened in the browser instead.
+ */
+public class ReaderActivity extends AppCompatActivity {
+
+    /** The {@link News} to show */
+    private static final String EXTRA_NEWS = "news";
+
+    /** When the news was tapped, in nanoseconds, 0 when metrics are off */
+    private static final String EXTRA_TAP_TIME = "tap_time";
+
+    /** Reads the bodies, one at a time */
+    private static final Executor READER_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private News mNews;
+
+    private TextView mBodyView;
+
+    /**
+     * Return the intent showing the saved body of the given news.
+     *
+     * @param tapTime is when the news was tapped, as returned by {@link Metrics#start()}
+     */
+    static Intent newIntent(Context context, News news, long tapTime) {
+        return new Intent(context, ReaderActivity.class)
+                .putExtra(EXTRA_NEWS, news)
+                .putExtra(EXTRA_TAP_TIME, tapTime);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.reader_activity);
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        mNews = getIntent().getParcelableExtra(EXTRA_NEWS);
+        if (mNews == null) {
+            finish();
+            return;
+        }
+        NewsRowText text = new NewsFormatter(this).format(mNews, System.currentTimeMillis());
+        ((TextView) findViewById(R.id.reader_title)).setText(mNews.getNewsTitle());
+        ((TextView) findViewById(R.id.reader_byline)).setText(getString(R.string.reader_byline,
+                text.getSection(), text.getAuthor(), text.getDate()));
+        mBodyView = findViewById(R.id.reader_body);
+        // Links of the body open in the browser
+        mBodyView.setMovementMethod(LinkMovementMethod.getInstance());
+
+        loadBody(getIntent().getLongExtra(EXTRA_TAP_TIME, 0));
+    }
+
+    /**
+     * Read the body in the background and show it.
+     */
+    private void loadBody(final long tapTime) {
+        final ArticleStore store = ArticleStore.getInstance(this);
+        final String url = mNews.getNewsUrl();
+        READER_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                String html = store.get(url);
+                final CharSequence body = html == null ? null : fromHtml(html);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        showBody(body, tapTime);
+                    }
+                });
+            }
+        });
+    }
+
+    private void showBody(CharSequence body, long tapTime) {
+        if (isDestroyed()) {
+            return;
+        }
+        if (body == null) {
+            openInBrowser();
+            finish();
+            return;
+        }
+        mBodyView.setText(body);
+        Metrics.stopAtNextFrame(Metrics.ARTICLE_DISPLAY, tapTime, mBodyView);
+    }
+
+    /**
+     * Return the text of the given body. Its figures would need the network, they are left out.
+     */
+    @SuppressWarnings("deprecation")
+    private static CharSequence fromHtml(String html) {
+        String withoutFigures = html.replaceAll("(?s)<figure.*?</figure>", "");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Html.fromHtml(withoutFigures, Html.FROM_HTML_MODE_LEGACY);
+        }
+        return Html.fromHtml(withoutFigures);
+    }
+
+    private void openInBrowser() {
+        if (!BrowserLauncher.getInstance(this).open(this, mNews.getNewsUrl())) {
+            Toast.makeText(this, R.string.no_webbrowser, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.reader, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == android.R.id.home) {
+            // The list is still below, going back keeps its scroll position
+            finish();
+            return true;
+        }
+        if (id == R.id.action_open_in_browser) {
+            openInBrowser();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
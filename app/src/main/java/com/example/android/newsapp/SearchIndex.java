@@ -0,0 +1,234 @@
+package com.example.android.newsapp;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory full-text index over the titles, sections and authors of the news fetched so far,
+ * so a search can be answered while the user types, without the network.
+ *
+ * Every word points to the news containing it. The words are kept sorted, so the words
+ * starting with a prefix are found with a range lookup. A query matches the news that contain
+ * a word starting with each of its words. Matches in the title rank above matches in the
+ * author and the section, and newer news rank above older ones.
+ */
+public final class SearchIndex {
+
+    /** Number of news kept in the index, the oldest are dropped beyond it */
+    private static final int DEFAULT_MAX_DOCUMENTS = 5000;
+
+    /** Fields of a news, stored in the two lowest bits of every posting */
+    private static final int FIELD_TITLE = 0;
+    private static final int FIELD_SECTION = 1;
+    private static final int FIELD_AUTHOR = 2;
+    private static final int[] FIELD_WEIGHTS = {3, 1, 2};
+
+    private static SearchIndex sInstance;
+
+    private final int mMaxDocuments;
+
+    /** Indexed news, their position is their id in the postings */
+    private final List<News> mDocuments = new ArrayList<>();
+
+    /** Id of every indexed news by its URL, so a news fetched again is not indexed twice */
+    private final Map<String, Integer> mIdsByUrl = new HashMap<>();
+
+    /** News containing every word, as (id << 2 | field) in the order they were indexed */
+    private final TreeMap<String, Postings> mPostings = new TreeMap<>();
+
+    /**
+     * Return the index shared by the whole app.
+     */
+    public static synchronized SearchIndex getInstance() {
+        if (sInstance == null) {
+            sInstance = new SearchIndex(DEFAULT_MAX_DOCUMENTS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link SearchIndex}.
+     *
+     * @param maxDocuments is the number of news kept before the oldest are dropped
+     */
+    SearchIndex(int maxDocuments) {
+        mMaxDocuments = maxDocuments;
+    }
+
+    /**
+     * Add the given news to the index. News that are already indexed are skipped.
+     */
+    public synchronized void addAll(List<News> newsList) {
+        if (mDocuments.size() + newsList.size() > mMaxDocuments) {
+            trim(newsList.size());
+        }
+        for (News news : newsList) {
+            String url = news.getNewsUrl();
+            if (url == null || mIdsByUrl.containsKey(url)) {
+                continue;
+            }
+            int id = mDocuments.size();
+            mDocuments.add(news);
+            mIdsByUrl.put(url, id);
+            addField(id, FIELD_TITLE, news.getNewsTitle());
+            addField(id, FIELD_SECTION, news.getNewsSection());
+            addField(id, FIELD_AUTHOR, news.getAuthorsName());
+        }
+    }
+
+    /**
+     * Return the best matching news for the given query, best first.
+     *
+     * @param query are the words typed by the user, each of them may be incomplete
+     * @param limit is the largest number of news returned
+     */
+    public synchronized List<News> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || mDocuments.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int count = mDocuments.size();
+        // Number of terms every news matched so far, and its score
+        int[] matched = new int[count];
+        final int[] scores = new int[count];
+        for (int term = 0; term < terms.size(); term++) {
+            String prefix = terms.get(term);
+            NavigableMap<String, Postings> words =
+                    mPostings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+            for (Postings postings : words.values()) {
+                for (int i = 0; i < postings.mSize; i++) {
+                    int posting = postings.mValues[i];
+                    int id = posting >>> 2;
+                    // Only news that matched all earlier terms can still match the query
+                    if (matched[id] == term) {
+                        matched[id] = term + 1;
+                    } else if (matched[id] != term + 1) {
+                        continue;
+                    }
+                    scores[id] += FIELD_WEIGHTS[posting & 3];
+                }
+            }
+        }
+
+        List<Integer> hits = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            if (matched[id] == terms.size()) {
+                hits.add(id);
+            }
+        }
+        Collections.sort(hits, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (scores[a] != scores[b]) {
+                    return scores[a] > scores[b] ? -1 : 1;
+                }
+                long left = mDocuments.get(a).getNewsDate();
+                long right = mDocuments.get(b).getNewsDate();
+                return left > right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+
+        List<News> results = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            results.add(mDocuments.get(hits.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Return the number of news in the index.
+     */
+    public synchronized int size() {
+        return mDocuments.size();
+    }
+
+    private void addField(int id, int field, String text) {
+        for (String word : tokenize(text)) {
+            Postings postings = mPostings.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                mPostings.put(word, postings);
+            }
+            postings.add(id << 2 | field);
+        }
+    }
+
+    /**
+     * Drop the oldest news, so there is room for the given number of new ones and
+     * for half of the index to be filled again before the next trim.
+     */
+    private void trim(int incoming) {
+        // The news are indexed in the order they were added, so the last ones are the newest
+        int keep = Math.max(0, Math.min(mDocuments.size(), mMaxDocuments / 2 - incoming));
+        List<News> kept = new ArrayList<>(mDocuments.subList(mDocuments.size() - keep, mDocuments.size()));
+        mDocuments.clear();
+        mIdsByUrl.clear();
+        mPostings.clear();
+        addAll(kept);
+    }
+
+    /**
+     * Split the text into lower case words without accents, so "Zoë" is found with "zoe".
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String folded = text.toLowerCase(Locale.ROOT);
+        if (!isAscii(folded)) {
+            folded = Normalizer.normalize(folded, Normalizer.Form.NFD)
+                    .replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
+        }
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A growing array of postings, which avoids boxing every one of them.
+     */
+    private static final class Postings {
+        int[] mValues = new int[4];
+        int mSize;
+
+        void add(int value) {
+            // The fields of a news are indexed one after the other, skip repeated words
+            if (mSize > 0 && mValues[mSize - 1] == value) {
+                return;
+            }
+            if (mSize == mValues.length) {
+                int[] grown = new int[mSize * 2];
+                System.arraycopy(mValues, 0, grown, 0, mSize);
+                mValues = grown;
+            }
+            mValues[mSize++] = value;
+        }
+    }
+}
@@ -35,6 +35,9 @@ public class SettingsActivity extends AppCompatActivity {
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
 
+            Preference offlineArticles = findPreference(getString(R.string.settings_offline_articles_key));
+            bindPreferenceSummaryToValue(offlineArticles);
+
         }
 
         /**
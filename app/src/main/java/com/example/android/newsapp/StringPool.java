@@ -0,0 +1,37 @@
+package com.example.android.newsapp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares one instance of strings that repeat across many news, such as section and author
+ * names, so thousands of cached news do not each hold their own copy.
+ */
+final class StringPool {
+
+    /** Upper bound of pooled strings, past it new strings are simply not shared */
+    private static final int MAX_SIZE = 4096;
+
+    private static final ConcurrentHashMap<String, String> sPool = new ConcurrentHashMap<>();
+
+    private StringPool() {
+    }
+
+    /**
+     * Return the pooled instance equal to the given string, or the string itself if it is
+     * the first of its kind.
+     */
+    static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = sPool.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (sPool.size() >= MAX_SIZE) {
+            return value;
+        }
+        pooled = sPool.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.newsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link ArticlePrefetcher} saves the bodies of the news it is given, in one
+ * request to a local {@link StubGuardianServer}, and stays within its daily budget.
+ */
+public class ArticlePrefetcherTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubGuardianServer mServer;
+    private ArticleStore mStore;
+    private FetchPipeline mPipeline;
+    private File mBudgetFile;
+    private final FakeClock mClock = new FakeClock(1535200000000L);
+    private boolean mAllowed = true;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubGuardianServer(20);
+        mStore = new ArticleStore(mFolder.newFolder(), 1024 * 1024);
+        mPipeline = new FetchPipeline(2, 8, DIRECT);
+        mBudgetFile = new File(mFolder.getRoot(), "budget");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void bodiesOfTheLikelyNewsAreSavedInOneRequest() throws Exception {
+        ArticlePrefetcher prefetcher = newPrefetcher(1024 * 1024);
+
+        assertEquals(5, prefetch(prefetcher, newsUrls(0, 5)));
+
+        assertEquals(1, mServer.getRequestCount());
+        String body = mStore.get(newsUrl(0));
+        assertTrue(body.startsWith("<p>Paragraph 0 of politics/2018/aug/25/story-0"));
+        assertNull(mStore.get(newsUrl(5)));
+    }
+
+    @Test
+    public void savedNewsAreNotFetchedAgain() throws Exception {
+        ArticlePrefetcher prefetcher = newPrefetcher(1024 * 1024);
+        prefetch(prefetcher, newsUrls(0, 3));
+
+        assertEquals(2, prefetch(prefetcher, newsUrls(0, 5)));
+        assertEquals(0, prefetch(prefetcher, newsUrls(0, 5)));
+
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void dailyBudgetBoundsTheDownloadsAcrossRestarts() throws Exception {
+        ArticlePrefetcher prefetcher = newPrefetcher(100);
+
+        // The budget is smaller than a body, only the most likely one is fetched
+        assertEquals(1, prefetch(prefetcher, newsUrls(0, 5)));
+        assertEquals(0, prefetcher.getRemainingBytes());
+        assertEquals(0, prefetch(prefetcher, newsUrls(0, 5)));
+        assertEquals(1, mServer.getRequestCount());
+
+        // A new process finds the budget spent, until the next day
+        ArticlePrefetcher restarted = newPrefetcher(100);
+        assertEquals(0, prefetch(restarted, newsUrls(0, 5)));
+        mClock.advance(DAY);
+        assertEquals(1, prefetch(restarted, newsUrls(0, 5)));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void nothingIsFetchedWhenTheSettingsDoNotAllowIt() throws Exception {
+        mAllowed = false;
+        ArticlePrefetcher prefetcher = newPrefetcher(1024 * 1024);
+
+        assertEquals(0, prefetch(prefetcher, newsUrls(0, 5)));
+
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    private ArticlePrefetcher newPrefetcher(long bytesPerDay) {
+        return new ArticlePrefetcher(mStore, mPipeline, mClock, mBudgetFile, bytesPerDay,
+                mServer.url(), new ArticlePrefetcher.Policy() {
+                    @Override
+                    public boolean allowsPrefetch() {
+                        return mAllowed;
+                    }
+                });
+    }
+
+    private static int prefetch(ArticlePrefetcher prefetcher, List<String> newsUrls) throws InterruptedException {
+        FetchPipeline.Call<Integer> call = prefetcher.prefetch(newsUrls, FetchPipeline.Priority.PREFETCH);
+        assertTrue(call.await(10, TimeUnit.SECONDS));
+        return call.getResult();
+    }
+
+    private static String newsUrl(int index) {
+        return "https://www.theguardian.com/politics/2018/aug/25/story-" + index;
+    }
+
+    private static List<String> newsUrls(int from, int to) {
+        List<String> urls = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            urls.add(newsUrl(i));
+        }
+        return urls;
+    }
+
+    /**
+     * A clock that only moves when the test says so.
+     */
+    private static class FakeClock implements Clock {
+        private long mNow;
+
+        FakeClock(long now) {
+            mNow = now;
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.newsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link ArticleStore} keeps bodies compressed and evicts the least recently read.
+ */
+public class ArticleStoreTest {
+
+    private static final String BODY = repeat("<p>The words every article body is made of.</p>", 100);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static String repeat(String text, int count) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+
+    @Test
+    public void storedBodyIsFoundAgainAndTakesLessRoom() throws IOException {
+        ArticleStore store = new ArticleStore(mFolder.newFolder(), 1024 * 1024);
+
+        long stored = store.put("https://www.theguardian.com/a", BODY);
+
+        assertTrue(store.contains("https://www.theguardian.com/a"));
+        assertEquals(BODY, store.get("https://www.theguardian.com/a"));
+        assertTrue(stored < BODY.length() / 4);
+        assertFalse(store.contains("https://www.theguardian.com/b"));
+        assertNull(store.get("https://www.theguardian.com/b"));
+    }
+
+    @Test
+    public void leastRecentlyReadBodyIsEvicted() throws IOException {
+        File directory = mFolder.newFolder();
+        long size = new ArticleStore(mFolder.newFolder(), 1024 * 1024).put("https://www.theguardian.com/x", BODY);
+        ArticleStore store = new ArticleStore(directory, size * 5 / 2);
+        store.put("https://www.theguardian.com/a", BODY);
+        new File(directory, ImageDiskCache.nameFor("https://www.theguardian.com/a"))
+                .setLastModified(System.currentTimeMillis() - 60000);
+        store.put("https://www.theguardian.com/b", BODY);
+        new File(directory, ImageDiskCache.nameFor("https://www.theguardian.com/b"))
+                .setLastModified(System.currentTimeMillis() - 30000);
+
+        // Reading a makes b the least recently read body
+        assertNotNull(store.get("https://www.theguardian.com/a"));
+        store.put("https://www.theguardian.com/c", BODY);
+
+        assertTrue(store.contains("https://www.theguardian.com/a"));
+        assertFalse(store.contains("https://www.theguardian.com/b"));
+        assertTrue(store.contains("https://www.theguardian.com/c"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.android.newsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Writes {@link FeedSnapshot} files and maps them back.
+ */
+public class FeedSnapshotTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void rowsAreReadBackFromTheMappedFile() throws Exception {
+        List<News> news = new ArrayList<>();
+        for (int i = 0; i < FeedSnapshot.MAX_ROWS + 10; i++) {
+            news.add(new News("Title " + i + " – café", "World", "Writer " + i,
+                    1535191200000L + i, "https://example.com/" + i, i % 2 == 0 ? null : "https://img/" + i));
+        }
+        File file = new File(mFolder.getRoot(), "feed.snapshot");
+
+        FeedSnapshot.write(file, "order-by=newest&page-size=20", 42L, news);
+        FeedSnapshot snapshot = FeedSnapshot.open(file);
+
+        assertNotNull(snapshot);
+        assertEquals("order-by=newest&page-size=20", snapshot.getQueryKey());
+        assertEquals(42L, snapshot.getSavedAt());
+        assertEquals(FeedSnapshot.MAX_ROWS, snapshot.getNews().size());
+        News last = snapshot.readNews(FeedSnapshot.MAX_ROWS - 1);
+        assertEquals("Title 29 – café", last.getNewsTitle());
+        assertEquals("World", last.getNewsSection());
+        assertEquals("Writer 29", last.getAuthorsName());
+        assertEquals(1535191200029L, last.getNewsDate());
+        assertEquals("https://example.com/29", last.getNewsUrl());
+        assertEquals("https://img/29", last.getThumbnailUrl());
+        assertNull(snapshot.readNews(0).getThumbnailUrl());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void foreignFilesAreIgnored() throws Exception {
+        File file = mFolder.newFile("feed.snapshot");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("{\"not\":\"a snapshot\"}".getBytes("UTF-8"));
+        out.close();
+
+        assertNull(FeedSnapshot.open(file));
+        assertNull(FeedSnapshot.open(new File(mFolder.getRoot(), "missing")));
+    }
+}
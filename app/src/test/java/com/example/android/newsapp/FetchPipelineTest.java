@@ -0,0 +1,275 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the order, cancellation and bounded queue of {@link FetchPipeline} on a plain JVM,
+ * with callbacks run on the threads of the pipeline.
+ */
+public class FetchPipelineTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    /** How every fetch ended, in the order they ended */
+    private final List<String> mEnded = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void fetchesTheUserWaitsForRunFirst() throws Exception {
+        FetchPipeline pipeline = new FetchPipeline(1, 8, DIRECT);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit(blocking(new CountDownLatch(1), release), FetchPipeline.Priority.USER,
+                recording("blocking"));
+
+        pipeline.submit(immediate(), FetchPipeline.Priority.BACKGROUND, recording("background"));
+        pipeline.submit(immediate(), FetchPipeline.Priority.PREFETCH, recording("prefetch"));
+        pipeline.submit(immediate(), FetchPipeline.Priority.USER, recording("user"));
+        release.countDown();
+
+        assertTrue(pipeline.awaitIdle(5000));
+        assertEquals(Arrays.asList("blocking result", "user result", "prefetch result",
+                "background result"), mEnded);
+    }
+
+    @Test
+    public void backgroundFetchesLeaveAThreadForTheUser() throws Exception {
+        FetchPipeline pipeline = new FetchPipeline(2, 8, DIRECT);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit(blocking(new CountDownLatch(1), release), FetchPipeline.Priority.BACKGROUND,
+                recording("sync"));
+        pipeline.submit(immediate(), FetchPipeline.Priority.BACKGROUND, recording("background"));
+
+        FetchPipeline.Call<String> user =
+                pipeline.submit(immediate(), FetchPipeline.Priority.USER, recording("user"));
+
+        assertTrue(user.await(5, TimeUnit.SECONDS));
+        assertEquals("result", user.getResult());
+        // The second background fetch still waits for the sync
+        assertFalse(mEnded.contains("background result"));
+        release.countDown();
+        assertTrue(pipeline.awaitIdle(5000));
+        assertEquals(3, mEnded.size());
+    }
+
+    @Test
+    public void fullQueueDropsTheLeastUrgentFetch() throws Exception {
+        FetchPipeline pipeline = new FetchPipeline(1, 2, DIRECT);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        pipeline.submit(blocking(started, release), FetchPipeline.Priority.USER,
+                recording("blocking"));
+        // Once running it no longer counts as waiting
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        pipeline.submit(immediate(), FetchPipeline.Priority.BACKGROUND, recording("background"));
+        pipeline.submit(immediate(), FetchPipeline.Priority.PREFETCH, recording("prefetch"));
+        pipeline.submit(immediate(), FetchPipeline.Priority.USER, recording("user"));
+        pipeline.submit(immediate(), FetchPipeline.Priority.BACKGROUND, recording("late"));
+        release.countDown();
+
+        assertTrue(pipeline.awaitIdle(5000));
+        assertEquals(Arrays.asList("background cancelled", "late cancelled", "blocking result",
+                "user result", "prefetch result"), mEnded);
+    }
+
+    @Test
+    public void cancellingClosesTheConnectionOfARunningFetch() throws Exception {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        // Sends a first chunk of the body and then stalls, like a slow network
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket client = server.accept();
+                    OutputStream out = client.getOutputStream();
+                    out.write(new byte[1024]);
+                    out.flush();
+                    Thread.sleep(10 * 1000);
+                    client.close();
+                } catch (IOException | InterruptedException e) {
+                    // The test is over
+                }
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        FetchPipeline pipeline = new FetchPipeline(1, 8, DIRECT);
+        final CountDownLatch firstChunk = new CountDownLatch(1);
+        FetchPipeline.Call<String> call = pipeline.submit(new FetchPipeline.Stages<Long, String>() {
+            @Override
+            public Long fetch(FetchPipeline.Call<?> call) throws IOException {
+                Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+                call.attach(socket);
+                InputStream body = call.read(socket.getInputStream());
+                byte[] buffer = new byte[512];
+                long total = 0;
+                int count;
+                while ((count = body.read(buffer)) != -1) {
+                    total += count;
+                    firstChunk.countDown();
+                }
+                return total;
+            }
+
+            @Override
+            public String postProcess(Long total) {
+                return "read " + total;
+            }
+        }, FetchPipeline.Priority.USER, recording("slow"));
+
+        assertTrue(firstChunk.await(5, TimeUnit.SECONDS));
+        long cancelledAt = System.nanoTime();
+        call.cancel();
+
+        assertTrue(pipeline.awaitIdle(5000));
+        // The blocked read returned right away, it did not wait for the server
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelledAt) < 1000);
+        assertEquals(Collections.singletonList("slow cancelled"), mEnded);
+        assertTrue(pipeline.getBytesWasted() <= 1024);
+        server.close();
+    }
+
+    @Test
+    public void cancelDuringThePostProcessLetsItComplete() throws Exception {
+        FetchPipeline pipeline = new FetchPipeline(1, 8, DIRECT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+        FetchPipeline.Call<String> call = pipeline.submit(new FetchPipeline.Stages<String, String>() {
+            @Override
+            public String fetch(FetchPipeline.Call<?> call) {
+                return "response";
+            }
+
+            @Override
+            public String postProcess(String response) throws IOException {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                stored.add(response);
+                return response;
+            }
+        }, FetchPipeline.Priority.USER, recording("storing"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        call.cancel();
+        release.countDown();
+
+        // The parsed response is stored, only its delivery is skipped
+        assertTrue(pipeline.awaitIdle(5000));
+        assertEquals(Collections.singletonList("response"), stored);
+        assertEquals(Collections.singletonList("storing cancelled"), mEnded);
+        assertEquals(0, pipeline.getBytesWasted());
+    }
+
+    @Test
+    public void fetchesTheUserWaitsForRunAtTheDefaultPriority() throws Exception {
+        FetchPipeline pipeline = new FetchPipeline(1, 8, DIRECT);
+
+        FetchPipeline.Call<String> background =
+                pipeline.submit(priority(), FetchPipeline.Priority.BACKGROUND, null);
+        FetchPipeline.Call<String> user = pipeline.submit(priority(), FetchPipeline.Priority.USER, null);
+
+        // Both ran on the only thread of the pipeline
+        assertTrue(pipeline.awaitIdle(5000));
+        assertTrue(Integer.parseInt(background.getResult()) < Thread.NORM_PRIORITY);
+        assertEquals(String.valueOf(Thread.NORM_PRIORITY), user.getResult());
+    }
+
+    /**
+     * Return stages answering the priority of the thread they run on.
+     */
+    private static FetchPipeline.Stages<String, String> priority() {
+        return new FetchPipeline.Stages<String, String>() {
+            @Override
+            public String fetch(FetchPipeline.Call<?> call) {
+                return String.valueOf(Thread.currentThread().getPriority());
+            }
+
+            @Override
+            public String postProcess(String response) {
+                return response;
+            }
+        };
+    }
+
+    private static FetchPipeline.Stages<String, String> immediate() {
+        return new FetchPipeline.Stages<String, String>() {
+            @Override
+            public String fetch(FetchPipeline.Call<?> call) {
+                return "result";
+            }
+
+            @Override
+            public String postProcess(String response) {
+                return response;
+            }
+        };
+    }
+
+    private static FetchPipeline.Stages<String, String> blocking(final CountDownLatch started,
+            final CountDownLatch release) {
+        return new FetchPipeline.Stages<String, String>() {
+            @Override
+            public String fetch(FetchPipeline.Call<?> call) throws IOException {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return "result";
+            }
+
+            @Override
+            public String postProcess(String response) {
+                return response;
+            }
+        };
+    }
+
+    private FetchPipeline.Callback<String> recording(final String name) {
+        return new FetchPipeline.Callback<String>() {
+            @Override
+            public void onResult(String result) {
+                mEnded.add(name + " " + result);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                mEnded.add(name + " failed");
+            }
+
+            @Override
+            public void onCancelled() {
+                mEnded.add(name + " cancelled");
+            }
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.android.newsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the {@link ImageDiskCache} stores pictures and evicts the least recently used.
+ */
+public class ImageDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static ByteArrayInputStream picture(int size) {
+        return new ByteArrayInputStream(new byte[size]);
+    }
+
+    @Test
+    public void storedPictureIsFoundAgain() throws IOException {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.newFolder(), 1024);
+
+        File stored = cache.put("https://media.guim.co.uk/a/500.jpg", picture(100));
+
+        assertEquals(stored, cache.get("https://media.guim.co.uk/a/500.jpg"));
+        assertEquals(100, stored.length());
+        assertNull(cache.get("https://media.guim.co.uk/b/500.jpg"));
+    }
+
+    @Test
+    public void leastRecentlyUsedPictureIsEvicted() throws IOException {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.newFolder(), 250);
+        cache.put("https://media.guim.co.uk/a/500.jpg", picture(100))
+                .setLastModified(System.currentTimeMillis() - 60000);
+        cache.put("https://media.guim.co.uk/b/500.jpg", picture(100))
+                .setLastModified(System.currentTimeMillis() - 30000);
+
+        // Using a makes b the least recently used picture
+        assertNotNull(cache.get("https://media.guim.co.uk/a/500.jpg"));
+        cache.put("https://media.guim.co.uk/c/500.jpg", picture(100));
+
+        assertNotNull(cache.get("https://media.guim.co.uk/a/500.jpg"));
+        assertNull(cache.get("https://media.guim.co.uk/b/500.jpg"));
+        assertNotNull(cache.get("https://media.guim.co.uk/c/500.jpg"));
+    }
+}
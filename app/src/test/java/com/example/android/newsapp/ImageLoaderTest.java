@@ -0,0 +1,19 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how much the {@link ImageLoader} samples pictures down.
+ */
+public class ImageLoaderTest {
+
+    @Test
+    public void sampleSizeKeepsThePictureAtLeastAsLargeAsTheView() {
+        assertEquals(1, ImageLoader.calculateInSampleSize(500, 300, 300, 180));
+        assertEquals(2, ImageLoader.calculateInSampleSize(1000, 600, 300, 180));
+        assertEquals(4, ImageLoader.calculateInSampleSize(2000, 1200, 300, 180));
+        assertEquals(1, ImageLoader.calculateInSampleSize(100, 60, 300, 180));
+    }
+}
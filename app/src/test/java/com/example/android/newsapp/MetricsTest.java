@@ -0,0 +1,77 @@
+package com.example.android.newsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link Metrics} records the stages of a query against a local
+ * {@link StubGuardianServer}, and nothing while it is off.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MetricsTest {
+
+    private StubGuardianServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        Metrics.reset();
+        mServer = new StubGuardianServer(30);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void nothingIsRecordedWhileDisabled() {
+        Metrics.setEnabled(false);
+        QueryUtils.fetchNewsData(mServer.url());
+
+        assertEquals(0, Metrics.start());
+        assertEquals(0, Metrics.getCount(Metrics.CONNECT));
+        assertEquals(0, Metrics.getCount(Metrics.PARSE));
+    }
+
+    @Test
+    public void everyNetworkStageIsRecorded() {
+        Metrics.setEnabled(true);
+        QueryUtils.fetchNewsData(mServer.url());
+
+        assertEquals(1, Metrics.getCount(Metrics.CONNECT));
+        assertEquals(1, Metrics.getCount(Metrics.FIRST_BYTE));
+        assertEquals(1, Metrics.getCount(Metrics.BODY_READ));
+        assertEquals(1, Metrics.getCount(Metrics.PARSE));
+        assertEquals(30, Metrics.percentile(Metrics.ITEM_COUNT, 0.5));
+
+        StringWriter dump = new StringWriter();
+        Metrics.dump("", new PrintWriter(dump));
+        assertTrue(dump.toString().contains("first_byte"));
+    }
+
+    @Test
+    public void percentilesAreBoundedByTheirBucket() {
+        Metrics.setEnabled(true);
+        for (int i = 1; i <= 100; i++) {
+            Metrics.count(Metrics.ITEM_COUNT, i);
+        }
+
+        // 50 falls in the bucket of 32 to 63
+        assertEquals(63, Metrics.percentile(Metrics.ITEM_COUNT, 0.5));
+        // The upper bound of the last bucket is capped by the maximum
+        assertEquals(100, Metrics.percentile(Metrics.ITEM_COUNT, 0.99));
+    }
+}
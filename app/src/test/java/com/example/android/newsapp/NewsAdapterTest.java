@@ -0,0 +1,93 @@
+package com.example.android.newsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link NewsAdapter} recognizes appended and prepended news in lists read again
+ * from the {@link NewsCache}, which never share their instances.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class NewsAdapterTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?q=politics";
+
+    private static final long NOW = 1535191200000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void newerNewsPutAtTheHeadOfAReReadListArePrepended() throws Exception {
+        NewsCache cache = newCache();
+        cache.put(URL, new NewsCache.Entry(news(0, 10), NOW, null, null));
+        List<News> shown = cache.get(URL).getNews();
+
+        List<News> refreshed = news(10, 13);
+        refreshed.addAll(cache.get(URL).getNews());
+        cache.put(URL, new NewsCache.Entry(refreshed, NOW, null, null));
+        List<News> reRead = cache.get(URL).getNews();
+
+        assertNotSame(shown.get(0), reRead.get(3));
+        assertTrue(NewsAdapter.isPrepend(shown, reRead));
+        assertFalse(NewsAdapter.isAppend(shown, reRead));
+    }
+
+    @Test
+    public void pageAddedToAReReadListIsAppended() throws Exception {
+        NewsCache cache = newCache();
+        cache.put(URL, new NewsCache.Entry(news(0, 10), NOW, null, null));
+        List<News> shown = cache.get(URL).getNews();
+
+        List<News> paged = new ArrayList<>(cache.get(URL).getNews());
+        paged.addAll(news(10, 20));
+        cache.put(URL, new NewsCache.Entry(paged, NOW, null, null));
+
+        assertTrue(NewsAdapter.isAppend(shown, cache.get(URL).getNews()));
+    }
+
+    @Test
+    public void changedNewsAreNotTakenForAnAppend() {
+        List<News> shown = news(0, 10);
+        List<News> changed = news(0, 20);
+        News first = changed.get(0);
+        changed.set(0, new News("Corrected title", first.getNewsSection(), first.getAuthorsName(),
+                first.getNewsDate(), first.getNewsUrl(), first.getThumbnailUrl()));
+
+        assertFalse(NewsAdapter.isAppend(shown, changed));
+    }
+
+    private NewsCache newCache() throws Exception {
+        Clock clock = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return NOW;
+            }
+        };
+        return new NewsCache(mFolder.newFolder(), 1024 * 1024, 24 * 60 * 60 * 1000L, clock);
+    }
+
+    /**
+     * Return the news from the first to the last index, the highest index is the newest.
+     */
+    private static List<News> news(int from, int to) {
+        List<News> news = new ArrayList<>();
+        for (int i = to - 1; i >= from; i--) {
+            news.add(new News("Story " + i, "Politics", "Writer", NOW + i * 60000L,
+                    "https://www.theguardian.com/story-" + i, null));
+        }
+        return news;
+    }
+}
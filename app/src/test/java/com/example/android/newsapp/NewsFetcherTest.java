@@ -0,0 +1,124 @@
+package com.example.android.newsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks retries and coalescing of {@link NewsFetcher} against a local {@link StubGuardianServer}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class NewsFetcherTest {
+
+    private StubGuardianServer mServer;
+    private NewsFetcher mFetcher;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StubGuardianServer(20);
+        mFetcher = new NewsFetcher();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void serverErrorsAreRetriedAfterTheRequestedDelay() {
+        mServer.failNext(1, "1");
+
+        long start = System.currentTimeMillis();
+        NewsCache.Entry entry = mFetcher.fetch(mServer.url(), null, 10 * 1000);
+
+        assertNotNull(entry);
+        assertEquals(20, entry.getNews().size());
+        assertEquals(2, mServer.getRequestCount());
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    @Test
+    public void retriesStopAtTheDeadline() {
+        mServer.failNext(10, "5");
+
+        assertNull(mFetcher.fetch(mServer.url(), null, 2 * 1000));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void identicalQueriesInFlightShareOneRequest() throws Exception {
+        mServer.setDelayMillis(300);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<NewsCache.Entry>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(new Callable<NewsCache.Entry>() {
+                @Override
+                public NewsCache.Entry call() {
+                    return mFetcher.fetch(mServer.url(), null, 10 * 1000);
+                }
+            }));
+        }
+
+        for (Future<NewsCache.Entry> result : results) {
+            assertEquals(20, result.get().getNews().size());
+        }
+        assertEquals(1, mServer.getRequestCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void waiterOfACancelledQueryMakesTheRequestAgain() throws Exception {
+        mServer.setDelayMillis(300);
+        FetchPipeline pipeline = new FetchPipeline(2, 8, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+        FetchPipeline.Call<NewsCache.Entry> leader = pipeline.submit(
+                new FetchPipeline.Stages<NewsCache.Entry, NewsCache.Entry>() {
+                    @Override
+                    public NewsCache.Entry fetch(FetchPipeline.Call<?> call) {
+                        return mFetcher.fetch(mServer.url(), null, 10 * 1000, call);
+                    }
+
+                    @Override
+                    public NewsCache.Entry postProcess(NewsCache.Entry entry) throws IOException {
+                        return entry;
+                    }
+                }, FetchPipeline.Priority.USER, null);
+        Thread.sleep(100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<NewsCache.Entry> follower = executor.submit(new Callable<NewsCache.Entry>() {
+            @Override
+            public NewsCache.Entry call() {
+                return mFetcher.fetch(mServer.url(), null, 10 * 1000);
+            }
+        });
+        Thread.sleep(100);
+
+        leader.cancel();
+
+        assertEquals(20, follower.get().getNews().size());
+        assertEquals(2, mServer.getRequestCount());
+        executor.shutdown();
+    }
+}
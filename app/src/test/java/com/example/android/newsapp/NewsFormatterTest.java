@@ -0,0 +1,34 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how long the relative dates built by {@link NewsFormatter} hold.
+ */
+public class NewsFormatterTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private static final long PUBLISHED = 1535191200000L;
+
+    @Test
+    public void recentNewsAreFormattedAgainEveryMinute() {
+        long now = PUBLISHED + 3 * MINUTE + 20 * 1000;
+
+        assertEquals(PUBLISHED + 4 * MINUTE, NewsFormatter.validUntil(PUBLISHED, now));
+    }
+
+    @Test
+    public void olderNewsAreFormattedAgainEveryHourThenEveryDay() {
+        long hoursLater = PUBLISHED + 3 * HOUR + 10 * MINUTE;
+        long daysLater = PUBLISHED + 2 * DAY + 5 * HOUR;
+
+        assertEquals(PUBLISHED + 4 * HOUR, NewsFormatter.validUntil(PUBLISHED, hoursLater));
+        assertEquals(PUBLISHED + 3 * DAY, NewsFormatter.validUntil(PUBLISHED, daysLater));
+        assertEquals(Long.MAX_VALUE, NewsFormatter.validUntil(News.NO_DATE, daysLater));
+    }
+}
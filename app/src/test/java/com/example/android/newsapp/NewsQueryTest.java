@@ -0,0 +1,51 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks that {@link NewsQuery} gives settings asking for the same news the same key and URL.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class NewsQueryTest {
+
+    @Test
+    public void equivalentSettingsGiveTheSameQuery() {
+        NewsQuery typed = new NewsQuery("politics", "newest", "20");
+        NewsQuery decimal = new NewsQuery(" politics ", " newest", "20.0");
+
+        assertEquals(typed, decimal);
+        assertEquals(typed.toUrl(), decimal.toUrl());
+    }
+
+    @Test
+    public void invalidSettingsFallBackToTheDefaults() {
+        NewsQuery query = new NewsQuery("politics", "magnitude", "lots");
+
+        assertEquals("newest", query.getOrderBy());
+        assertEquals(20, query.getPageSize());
+        assertEquals(new NewsQuery("politics", "newest", "20"), query);
+    }
+
+    @Test
+    public void pageSizeIsClampedToTheApiLimit() {
+        assertEquals(50, new NewsQuery("politics", "newest", "500").getPageSize());
+        assertEquals(20, new NewsQuery("politics", "newest", "0").getPageSize());
+    }
+
+    @Test
+    public void changedSettingsGiveAnotherQuery() {
+        NewsQuery newest = new NewsQuery("politics", "newest", "20");
+
+        assertNotEquals(newest, new NewsQuery("politics", "oldest", "20"));
+        assertNotEquals(newest, newest.withSearchTerms("brexit vote"));
+        assertEquals("order-by=newest&page-size=20&q=brexit%20vote&show-fields=thumbnail&show-tags=contributor",
+                newest.withSearchTerms("brexit  vote").getKey());
+    }
+}
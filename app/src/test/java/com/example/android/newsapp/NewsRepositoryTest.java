@@ -0,0 +1,169 @@
+package com.example.android.newsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link NewsRepository} against a local {@link StubGuardianServer}, with its
+ * notifications made on the threads of its pipeline, which the test waits for, and a
+ * connection the test turns off by hand.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class NewsRepositoryTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubGuardianServer mServer;
+    private long mNow = 1535191200000L;
+    private boolean mConnected = true;
+    private final List<String> mChanges = new ArrayList<>();
+    private FetchPipeline mPipeline;
+    private NewsRepository mRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StubGuardianServer(50);
+        Clock clock = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return mNow;
+            }
+        };
+        NewsCache cache = new NewsCache(mFolder.newFolder(), 1024 * 1024, 24 * 60 * MINUTE, clock);
+        mPipeline = new FetchPipeline(2, 8, DIRECT);
+        mRepository = new NewsRepository(cache, new NewsFetcher(), new NewsRepository.Connectivity() {
+            @Override
+            public boolean isConnected() {
+                return mConnected;
+            }
+        }, clock, mPipeline, DIRECT);
+        mRepository.registerObserver(new NewsRepository.Observer() {
+            @Override
+            public void onFeedChanged(String url) {
+                mChanges.add(url);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void refreshOnlyWritesIntoTheStore() throws Exception {
+        NewsRepository.Feed empty = mRepository.getFeed(mServer.url());
+        assertTrue(empty.getNews().isEmpty());
+        assertTrue(empty.isStale(mNow));
+
+        assertTrue(mRepository.refresh(mServer.url()));
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+
+        NewsRepository.Feed feed = mRepository.getFeed(mServer.url());
+        assertEquals(50, feed.getNews().size());
+        assertEquals(mNow, feed.getSavedAt());
+        assertFalse(feed.isRefreshing());
+        assertFalse(feed.hasRefreshFailed());
+        assertFalse(feed.isStale(mNow));
+        // Once when the request started and once when the news were stored
+        assertEquals(2, mChanges.size());
+    }
+
+    @Test
+    public void offlineRefreshKeepsServingStoredNewsAsStale() throws Exception {
+        mRepository.refresh(mServer.url());
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        mNow += 60 * MINUTE;
+        mConnected = false;
+
+        assertFalse(mRepository.refresh(mServer.url()));
+
+        NewsRepository.Feed feed = mRepository.getFeed(mServer.url());
+        assertEquals(50, feed.getNews().size());
+        assertTrue(feed.hasRefreshFailed());
+        assertTrue(feed.isStale(mNow));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void feedWithoutResultsIsNotAFailedRefresh() throws Exception {
+        StubGuardianServer emptyServer = new StubGuardianServer(0);
+        try {
+            mRepository.refresh(emptyServer.url());
+            assertTrue(mPipeline.awaitIdle(10 * 1000));
+
+            NewsRepository.Feed feed = mRepository.getFeed(emptyServer.url());
+            assertTrue(feed.getNews().isEmpty());
+            assertFalse(feed.hasRefreshFailed());
+            assertEquals(mNow, feed.getSavedAt());
+        } finally {
+            emptyServer.shutdown();
+        }
+    }
+
+    @Test
+    public void refreshKeepsThePagesLoadedBefore() throws Exception {
+        String url = mServer.url() + "&page-size=10";
+        mRepository.refresh(url);
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        for (int page = 2; page <= 3; page++) {
+            assertTrue(mRepository.loadNextPage(url));
+            assertTrue(mPipeline.awaitIdle(10 * 1000));
+        }
+        assertEquals(30, mRepository.getFeed(url).getNews().size());
+
+        // The feed is unchanged, the server answers 304 and the three pages stay stored
+        mRepository.refresh(url);
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        assertEquals(30, mRepository.getFeed(url).getNews().size());
+
+        assertTrue(mRepository.loadNextPage(url));
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        assertEquals(4, mServer.getLastPage());
+        assertEquals(40, mRepository.getFeed(url).getNews().size());
+        assertEquals(5, mServer.getRequestCount());
+    }
+
+    @Test
+    public void cancelledRefreshStoresNothingAndEndsTheRefresh() throws Exception {
+        mServer.setDelayMillis(500);
+        mRepository.refresh(mServer.url());
+        Thread.sleep(100);
+
+        long cancelledAt = System.currentTimeMillis();
+        mRepository.cancel(mServer.url());
+
+        // The request ends without waiting for the answer of the server
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        assertTrue(System.currentTimeMillis() - cancelledAt < 300);
+        NewsRepository.Feed feed = mRepository.getFeed(mServer.url());
+        assertTrue(feed.getNews().isEmpty());
+        assertFalse(feed.isRefreshing());
+        assertFalse(feed.hasRefreshFailed());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.newsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link NewsSyncer} against a local {@link StubGuardianServer} with a clock the test
+ * moves forward by hand, through a {@link NewsRepository} delivering on its pipeline threads.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class NewsSyncerTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubGuardianServer mServer;
+    private FakeClock mClock;
+    private NewsCache mCache;
+    private FetchPipeline mPipeline;
+    private NewsRepository mRepository;
+    private NewsSyncer mSyncer;
+    private List<String> mFeeds;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StubGuardianServer(50);
+        mClock = new FakeClock(1535191200000L);
+        mCache = new NewsCache(mFolder.newFolder(), 1024 * 1024, 24 * 60 * MINUTE, mClock);
+        mPipeline = new FetchPipeline(2, 8, DIRECT);
+        mRepository = new NewsRepository(mCache, new NewsFetcher(), new NewsRepository.Connectivity() {
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+        }, mClock, mPipeline, DIRECT);
+        mSyncer = new NewsSyncer(mRepository, mClock);
+        mFeeds = Collections.singletonList(mServer.url());
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void syncWritesFeedsIntoTheCache() throws Exception {
+        assertTrue(sync(mFeeds));
+
+        NewsCache.Entry entry = mCache.get(mServer.url());
+        assertNotNull(entry);
+        assertEquals(50, entry.getNews().size());
+        assertEquals(mClock.currentTimeMillis(), entry.getSavedAt());
+    }
+
+    @Test
+    public void freshFeedsAreNotFetchedAgain() throws Exception {
+        sync(mFeeds);
+        mClock.advance(MINUTE);
+
+        assertTrue(sync(mFeeds));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void staleFeedsAreRevalidatedWithoutDownloadingTheBody() throws Exception {
+        sync(mFeeds);
+        long bodyBytes = mServer.getBodyBytesSent();
+        mClock.advance(10 * MINUTE);
+
+        assertTrue(sync(mFeeds));
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(bodyBytes, mServer.getBodyBytesSent());
+        assertEquals(mClock.currentTimeMillis(), mCache.get(mServer.url()).getSavedAt());
+    }
+
+    @Test
+    public void feedsSyncedWithinThePeriodAreSkipped() throws Exception {
+        sync(mFeeds);
+        mClock.advance(60 * MINUTE);
+
+        // The job of the other conditions runs in the same period
+        assertTrue(mSyncer.sync(mFeeds, 3 * 60 * MINUTE));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void syncKeepsThePagesLoadedBefore() throws Exception {
+        String url = mServer.url() + "&page-size=10";
+        mRepository.refresh(url);
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        assertTrue(mRepository.loadNextPage(url));
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        mClock.advance(10 * MINUTE);
+
+        assertTrue(sync(Collections.singletonList(url)));
+
+        assertEquals(20, mCache.get(url).getNews().size());
+        assertEquals(mClock.currentTimeMillis(), mCache.get(url).getSavedAt());
+        // Paging goes on after the second page
+        assertTrue(mRepository.loadNextPage(url));
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        assertEquals(3, mServer.getLastPage());
+    }
+
+    /**
+     * Sync the feeds and wait until the repository took the results in.
+     */
+    private boolean sync(List<String> feeds) throws InterruptedException {
+        boolean upToDate = mSyncer.sync(feeds);
+        assertTrue(mPipeline.awaitIdle(10 * 1000));
+        return upToDate;
+    }
+
+    /**
+     * A clock that only moves when the test says so.
+     */
+    private static class FakeClock implements Clock {
+        private long mNow;
+
+        FakeClock(long now) {
+            mNow = now;
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
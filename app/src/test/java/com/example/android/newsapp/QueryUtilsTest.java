@@ -0,0 +1,142 @@
+package com.example.android.newsapp;
+
+import android.util.MalformedJsonException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the requests made by {@link QueryUtils} against a local {@link StubGuardianServer}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class QueryUtilsTest {
+
+    private static final int RESULT_COUNT = 200;
+
+    private StubGuardianServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StubGuardianServer(RESULT_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void gzipBodyIsSmallerAndDecodedTransparently() {
+        NewsCache.Entry entry = QueryUtils.fetchNewsData(mServer.url(), null);
+
+        assertNotNull(entry);
+        assertEquals(RESULT_COUNT, entry.getNews().size());
+        assertEquals("Writer 0", entry.getNews().get(0).getAuthorsName());
+        assertEquals("https://media.guim.co.uk/story-0/500.jpg", entry.getNews().get(0).getThumbnailUrl());
+        assertTrue(mServer.getBodyBytesSent() * 4 < mServer.getUncompressedBodySize());
+    }
+
+    @Test
+    public void unchangedFeedIsServedFromThePreviousEntry() {
+        NewsCache.Entry first = QueryUtils.fetchNewsData(mServer.url(), null);
+        long bytesAfterFirst = mServer.getBodyBytesSent();
+
+        NewsCache.Entry second = QueryUtils.fetchNewsData(mServer.url(), first);
+
+        assertNotNull(second);
+        assertEquals(StubGuardianServer.ETAG, second.getETag());
+        // The news of the previous entry were neither downloaded nor parsed again
+        assertSame(first.getNews(), second.getNews());
+        assertEquals(2, mServer.getRequestCount());
+        // The 304 carried no body at all
+        assertEquals(bytesAfterFirst, mServer.getBodyBytesSent());
+    }
+
+    @Test
+    public void truncatedResponseIsNotTakenForTheFeed() throws Exception {
+        mServer.setTruncated(true);
+
+        try {
+            QueryUtils.requestNewsData(mServer.url(), null, 10 * 1000);
+            fail("The truncated body was taken for the whole feed");
+        } catch (MalformedJsonException e) {
+            // Nothing is cached, so the validators cannot make the next request a 304
+        }
+        assertNull(QueryUtils.fetchNewsData(mServer.url(), null));
+
+        mServer.setTruncated(false);
+        assertEquals(RESULT_COUNT, QueryUtils.fetchNewsData(mServer.url(), null).getNews().size());
+    }
+
+    @Test
+    public void sequentialRequestsShareOneConnection() {
+        int requests = 10;
+        for (int i = 0; i < requests; i++) {
+            assertNotNull(QueryUtils.fetchNewsData(mServer.url(), null));
+        }
+
+        // What reuse saves per request is measured by FetchBenchmark
+        assertEquals(requests, mServer.getRequestCount());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void bytesAreDecodedOnlyForTheKeptFields() throws Exception {
+        char[] longTitle = new char[BufferPool.BUFFER_SIZE * 2];
+        Arrays.fill(longTitle, 'é');
+        String json = "{\"response\":{\"status\":\"ok\",\"results\":["
+                + "{\"id\":\"a\",\"webTitle\":\"Caf\\u00e9 \\\"quoted\\\" \u2013 na\u00efve\","
+                + "\"extra\":{\"nested\":[1,2.5,true,null,\"\\\"]\"]},"
+                + "\"sectionName\":\"World\",\"webPublicationDate\":\"2018-07-01T10:00:00Z\","
+                + "\"webUrl\":\"https://example.com/a\",\"fields\":null,"
+                + "\"tags\":[{\"webTitle\":\"First\"},{\"webTitle\":\"Second\"}]},"
+                + "{\"webTitle\":\"" + new String(longTitle) + "\",\"sectionName\":\"Art\"}"
+                + "]}}";
+
+        List<News> news = QueryUtils.extractFeatureFromStream(
+                new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8"))));
+
+        assertEquals(2, news.size());
+        assertEquals("Caf\u00e9 \"quoted\" \u2013 na\u00efve", news.get(0).getNewsTitle());
+        assertEquals("World", news.get(0).getNewsSection());
+        assertEquals("First", news.get(0).getAuthorsName());
+        assertEquals("https://example.com/a", news.get(0).getNewsUrl());
+        assertNull(news.get(0).getThumbnailUrl());
+        assertEquals(new String(longTitle), news.get(1).getNewsTitle());
+        assertEquals("Art", news.get(1).getNewsSection());
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void malformedEscapeIsAnError() throws Exception {
+        String json = "{\"response\":{\"results\":[{\"webTitle\":\"Caf\\u00zz\"}]}}";
+
+        QueryUtils.extractFeatureFromStream(
+                new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void truncatedBodyIsAnError() throws Exception {
+        String json = StubGuardianServer.guardianJson(3);
+        String truncated = json.substring(0, json.indexOf("story-2"));
+
+        QueryUtils.extractFeatureFromStream(
+                new ByteArrayInputStream(truncated.getBytes(Charset.forName("UTF-8"))));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the matching and ranking of the {@link SearchIndex}.
+ */
+public class SearchIndexTest {
+
+    private static News news(int id, String title, String section, String author, String date) {
+        return new News(title, section, author, date, "https://www.theguardian.com/story-" + id);
+    }
+
+    @Test
+    public void incompleteWordsMatchByPrefix() {
+        SearchIndex index = new SearchIndex(100);
+        index.addAll(Arrays.asList(
+                news(1, "Brexit talks resume", "Politics", "Writer One", "2018-08-25T10:00:00Z"),
+                news(2, "Football results", "Sport", "Writer Two", "2018-08-25T11:00:00Z")));
+
+        List<News> results = index.search("brex", 10);
+
+        assertEquals(1, results.size());
+        assertEquals("Brexit talks resume", results.get(0).getNewsTitle());
+    }
+
+    @Test
+    public void everyWordOfTheQueryMustMatch() {
+        SearchIndex index = new SearchIndex(100);
+        index.addAll(Arrays.asList(
+                news(1, "Brexit talks resume", "Politics", "Writer One", "2018-08-25T10:00:00Z"),
+                news(2, "Brexit vote delayed", "Politics", "Writer Two", "2018-08-25T11:00:00Z")));
+
+        List<News> results = index.search("brexit two", 10);
+
+        assertEquals(1, results.size());
+        assertEquals("Brexit vote delayed", results.get(0).getNewsTitle());
+    }
+
+    @Test
+    public void titleMatchesRankFirstThenNewest() {
+        SearchIndex index = new SearchIndex(100);
+        index.addAll(Arrays.asList(
+                news(1, "Budget day", "Politics", "Anna Science", "2018-08-25T12:00:00Z"),
+                news(2, "Science weekly", "Culture", "Writer", "2018-08-25T10:00:00Z"),
+                news(3, "Science of sleep", "Culture", "Writer", "2018-08-25T11:00:00Z")));
+
+        List<News> results = index.search("science", 10);
+
+        assertEquals(3, results.size());
+        assertEquals("Science of sleep", results.get(0).getNewsTitle());
+        assertEquals("Science weekly", results.get(1).getNewsTitle());
+        assertEquals("Budget day", results.get(2).getNewsTitle());
+    }
+
+    @Test
+    public void accentsAndDuplicatesAreIgnored() {
+        SearchIndex index = new SearchIndex(100);
+        News news = news(1, "Interview", "Culture", "Zoë Williams", "2018-08-25T10:00:00Z");
+        index.addAll(Arrays.asList(news, news));
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.search("zoe", 10).size());
+    }
+
+    @Test
+    public void oldestNewsAreDroppedWhenFull() {
+        SearchIndex index = new SearchIndex(10);
+        List<News> newsList = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            newsList.add(news(i, "Story " + i, "Politics", "Writer", "2018-08-25T10:00:00Z"));
+        }
+        index.addAll(newsList.subList(0, 8));
+        index.addAll(newsList.subList(8, 12));
+
+        assertTrue(index.size() <= 10);
+        assertEquals(1, index.search("story 11", 10).size());
+        assertTrue(index.search("story 0", 10).isEmpty());
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.android.newsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server answering like the Guardian search endpoint, used by the unit tests.
+ *
+ * It honors Accept-Encoding: gzip, If-None-Match, page and page-size, and the ids asked for
+ * with show-fields=body, and counts the requests and the body bytes it sent and the connections they came over, so
+ * tests can compare what went over the wire.
+ */
+class StubGuardianServer implements HttpHandler {
+
+    static final String ETAG = "\"feed-v1\"";
+
+    static {
+        // The server writes the headers and the body of a response separately. With Nagle's
+        // algorithm the body then waits for the delayed ACK of the client, some 40 ms, on
+        // every request over a reused connection. Read once, when the first server starts.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer mServer;
+    private final int mResultCount;
+    private final byte[] mBody;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicLong mBodyBytesSent = new AtomicLong();
+    private final AtomicInteger mFailuresLeft = new AtomicInteger();
+    private final AtomicInteger mLastPage = new AtomicInteger();
+    private final Set<InetSocketAddress> mClientAddresses =
+            Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+    private volatile String mRetryAfter;
+    private volatile long mDelayMillis;
+    private volatile boolean mTruncated;
+
+    StubGuardianServer(int resultCount) throws IOException {
+        mResultCount = resultCount;
+        mBody = guardianJson(resultCount).getBytes(Charset.forName("UTF-8"));
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/search", this);
+        mServer.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/search?q=politics";
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Return the number of connections the requests came over, a reused socket counts once.
+     */
+    int getConnectionCount() {
+        return mClientAddresses.size();
+    }
+
+    long getBodyBytesSent() {
+        return mBodyBytesSent.get();
+    }
+
+    /**
+     * Return the page asked for by the last request, 1 if it did not say, 0 before any request.
+     */
+    int getLastPage() {
+        return mLastPage.get();
+    }
+
+    int getUncompressedBodySize() {
+        return mBody.length;
+    }
+
+    /**
+     * Answer the next requests with 503 Service Unavailable and the given Retry-After header,
+     * which may be null.
+     */
+    void failNext(int count, String retryAfter) {
+        mRetryAfter = retryAfter;
+        mFailuresLeft.set(count);
+    }
+
+    /**
+     * Wait the given time before answering every request.
+     */
+    void setDelayMillis(long delayMillis) {
+        mDelayMillis = delayMillis;
+    }
+
+    /**
+     * Answer with only the first half of the JSON, like a connection dropped by a proxy that
+     * still ends the response cleanly.
+     */
+    void setTruncated(boolean truncated) {
+        mTruncated = truncated;
+    }
+
+    void shutdown() {
+        mServer.stop(0);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        mClientAddresses.add(exchange.getRemoteAddress());
+        String query = exchange.getRequestURI().getRawQuery();
+        String page = parameterOf(query, "page");
+        mLastPage.set(page == null ? 1 : Integer.parseInt(page));
+        if (mDelayMillis > 0) {
+            try {
+                Thread.sleep(mDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mFailuresLeft.getAndDecrement() > 0) {
+            if (mRetryAfter != null) {
+                exchange.getResponseHeaders().set("Retry-After", mRetryAfter);
+            }
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = mBody;
+        String ids = parameterOf(query, "ids");
+        String pageSize = parameterOf(query, "page-size");
+        if (ids != null) {
+            body = bodiesJson(Arrays.asList(ids.split(","))).getBytes(Charset.forName("UTF-8"));
+        } else if (pageSize != null) {
+            int size = Integer.parseInt(pageSize);
+            int from = Math.min((mLastPage.get() - 1) * size, mResultCount);
+            body = guardianJson(from, Math.min(from + size, mResultCount))
+                    .getBytes(Charset.forName("UTF-8"));
+        }
+        if (mTruncated) {
+            body = Arrays.copyOf(body, body.length / 2);
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(body);
+            gzip.close();
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // Counted first, the client may be done with the body before close() returns
+        mBodyBytesSent.addAndGet(body.length);
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * Return the value of the given parameter of a query string, or null.
+     */
+    private static String parameterOf(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return a Guardian search response with show-fields=body for the given ids, each
+     * answered with a body of a few paragraphs.
+     */
+    static String bodiesJson(List<String> ids) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"response\":{\"status\":\"ok\",\"total\":").append(ids.size())
+                .append(",\"results\":[");
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(id)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/").append(id)
+                    .append("\",\"fields\":{\"body\":\"");
+            for (int paragraph = 0; paragraph < 20; paragraph++) {
+                json.append("<p>Paragraph ").append(paragraph).append(" of ").append(id)
+                        .append(", with the words every article body is made of.</p>");
+            }
+            json.append("\"}}");
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+    /**
+     * Return a Guardian search response with the given number of results.
+     */
+    static String guardianJson(int resultCount) {
+        return guardianJson(0, resultCount);
+    }
+
+    /**
+     * Return a Guardian search response with the results from the first index to the last one.
+     */
+    static String guardianJson(int from, int to) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(to - from).append(",\"startIndex\":1,\"pageSize\":").append(to - from)
+                .append(",\"currentPage\":1,\"pages\":1,\"orderBy\":\"newest\",\"results\":[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"politics/2018/aug/25/story-").append(i)
+                    .append("\",\"type\":\"article\",\"sectionId\":\"politics\",\"sectionName\":\"Politics\"")
+                    .append(",\"webPublicationDate\":\"2018-08-25T")
+                    .append(String.format("%02d:%02d:00Z", (i / 60) % 24, i % 60))
+                    .append("\",\"webTitle\":\"Politics story number ").append(i)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/politics/2018/aug/25/story-").append(i)
+                    .append("\",\"apiUrl\":\"https://content.guardianapis.com/politics/2018/aug/25/story-").append(i)
+                    .append("\",\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/story-").append(i)
+                    .append("/500.jpg\"},\"tags\":[{\"id\":\"profile/writer-").append(i % 7)
+                    .append("\",\"type\":\"contributor\",\"webTitle\":\"Writer ").append(i % 7)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/profile/writer-").append(i % 7)
+                    .append("\"}],\"isHosted\":false,\"pillarId\":\"pillar/news\",\"pillarName\":\"News\"}");
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+}
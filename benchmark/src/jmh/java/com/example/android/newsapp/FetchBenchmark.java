@@ -0,0 +1,84 @@
+package com.example.android.newsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Measures a whole query, from the request to the parsed news, against a local
+ * {@link StubGuardianServer}. Only the network of the device is left out.
+ *
+ * Compare {@link #fetchNewsData()}, which reuses the connection of the previous query through
+ * the {@link NewsHttpClient}, with {@link #fetchOverFreshConnection()} for what keep-alive saves
+ * per request. Over loopback that is the TCP handshake only, a real network adds its round
+ * trips and the TLS handshake.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FetchBenchmark {
+
+    @Param({"20", "200", "2000"})
+    public int resultCount;
+
+    private StubGuardianServer mServer;
+    private NewsCache.Entry mPrevious;
+
+    @Setup
+    public void setUp() throws IOException {
+        // As the app does when it starts
+        NewsHttpClient.configureConnectionPool();
+        mServer = new StubGuardianServer(resultCount);
+        mPrevious = QueryUtils.fetchNewsData(mServer.url(), null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public List<News> fetchNewsData() {
+        return QueryUtils.fetchNewsData(mServer.url());
+    }
+
+    /**
+     * The same query on a connection of its own, closed once the response has been read, like
+     * every request was made before the connections were shared.
+     */
+    @Benchmark
+    public List<News> fetchOverFreshConnection() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(mServer.url()).openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setRequestProperty("Connection", "close");
+        InputStream in = new GZIPInputStream(connection.getInputStream());
+        try {
+            return QueryUtils.extractFeatureFromStream(in);
+        } finally {
+            in.close();
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * A refresh of a feed that did not change, answered with 304 Not Modified.
+     */
+    @Benchmark
+    public NewsCache.Entry fetchNotModified() {
+        return QueryUtils.fetchNewsData(mServer.url(), mPrevious);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.newsapp;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parser {@link QueryUtils} used before it read the bytes of the body itself, kept as the
+ * baseline of {@link ParseBenchmark}. It decodes the whole body to characters and pulls it
+ * through a {@link JsonReader}, which turns every name into a string.
+ */
+final class JsonReaderParser {
+
+    private JsonReaderParser() {
+    }
+
+    static List<News> parse(InputStream inputStream) throws IOException {
+        List<News> newsList = new ArrayList<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("response".equals(reader.nextName())) {
+                    readResponse(reader, newsList);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | MalformedJsonException e) {
+            // Keep whatever was parsed, like the app did
+        }
+        return newsList;
+    }
+
+    /**
+     * Read the "response" object and add every entry of its "results" array to the list.
+     */
+    static void readResponse(JsonReader reader, List<News> newsList) throws IOException{
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("results".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    newsList.add(readNews(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read a single entry of the "results" array into a {@link News} object.
+     */
+    static News readNews(JsonReader reader) throws IOException{
+        String title = null;
+        String section = null;
+        String date = null;
+        String url = null;
+        String thumbnail = null;
+        String author = "N/A";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "webTitle":
+                    title = reader.nextString();
+                    break;
+                case "sectionName":
+                    section = reader.nextString();
+                    break;
+                case "webPublicationDate":
+                    date = reader.nextString();
+                    break;
+                case "webUrl":
+                    url = reader.nextString();
+                    break;
+                case "fields":
+                    thumbnail = readThumbnail(reader);
+                    break;
+                case "tags":
+                    // The first contributor tag holds the author's name
+                    author = readFirstTagTitle(reader, author);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        // Create a new {@link News} object with the title, section, author, date,
+        // url and thumbnail from the JSON response.
+        return new News(title, section, author, News.parseDate(date), url, thumbnail);
+    }
+
+    /**
+     * Return the "thumbnail" of a "fields" object, or null when there is none.
+     */
+    static String readThumbnail(JsonReader reader) throws IOException{
+        String thumbnail = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("thumbnail".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                thumbnail = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return thumbnail;
+    }
+
+    /**
+     * Return the "webTitle" of the first object in a "tags" array, or the fallback
+     * when there is none.
+     */
+    static String readFirstTagTitle(JsonReader reader, String fallback) throws IOException{
+        String title = fallback;
+        boolean first = true;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (first && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("webTitle".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                        title = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+            first = false;
+        }
+        reader.endArray();
+        return title;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.newsapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parsing of the first version of {@link QueryUtils}, which read the whole response into a
+ * String and built a JSON tree from it. It is kept as the baseline of {@link ParseBenchmark}.
+ */
+final class LegacyParser {
+
+    private LegacyParser() {
+    }
+
+    static List<News> parse(InputStream inputStream) throws IOException {
+        return extractFeatureFromJson(readFromStream(inputStream));
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the
+     * whole JSON response from the server.
+     */
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+            String line = bufferedReader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = bufferedReader.readLine();
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Return a list of {@link News} objects that has been built up from
+     * parsing the given JSON response.
+     */
+    static List<News> extractFeatureFromJson(String newsJson) {
+        if (newsJson == null || newsJson.isEmpty()) {
+            return null;
+        }
+
+        List<News> newsList = new ArrayList<>();
+        try {
+            JSONObject baseJsonResponse = new JSONObject(newsJson);
+            JSONArray results = baseJsonResponse.getJSONObject("response").getJSONArray("results");
+
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject currentNews = results.getJSONObject(i);
+                String title = currentNews.getString("webTitle");
+                String section = currentNews.getString("sectionName");
+                String date = currentNews.getString("webPublicationDate");
+                String url = currentNews.getString("webUrl");
+
+                String newsAuthor = "N/A";
+                if (currentNews.has("tags")) {
+                    JSONArray tags = currentNews.getJSONArray("tags");
+                    if (tags.length() > 0 && tags.getJSONObject(0).has("webTitle")) {
+                        newsAuthor = tags.getJSONObject(0).getString("webTitle");
+                    }
+                }
+
+                newsList.add(new News(title, section, newsAuthor, date, url));
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException("Problem parsing the Guardian JSON results", e);
+        }
+        return newsList;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.android.newsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a single {@link News} from the texts of the response, and storing and
+ * reading back a feed in the {@link NewsCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ModelBenchmark {
+
+    private static final String FEED_URL = "http://content.guardianapis.com/search?q=politics";
+
+    @Param({"20", "200"})
+    public int resultCount;
+
+    private List<News> mNews;
+    private File mDirectory;
+    private NewsCache mCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] payload = StubGuardianServer.guardianJson(resultCount).getBytes(Charset.forName("UTF-8"));
+        mNews = QueryUtils.extractFeatureFromStream(new ByteArrayInputStream(payload));
+
+        mDirectory = File.createTempFile("news-cache", "");
+        mDirectory.delete();
+        mCache = new NewsCache(mDirectory, Long.MAX_VALUE, Long.MAX_VALUE, Clock.SYSTEM);
+        mCache.put(FEED_URL, mNews);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public News newNews() {
+        return new News("Politics story number 1", "Politics", "Writer 1",
+                "2018-08-25T10:01:00Z", "https://www.theguardian.com/politics/2018/aug/25/story-1");
+    }
+
+    @Benchmark
+    public long parseDate() {
+        return News.parseDate("2018-08-25T10:01:00Z");
+    }
+
+    @Benchmark
+    public void cachePut() {
+        mCache.put(FEED_URL, mNews);
+    }
+
+    @Benchmark
+    public NewsCache.Entry cacheGet() {
+        return mCache.get(FEED_URL);
+    }
+}
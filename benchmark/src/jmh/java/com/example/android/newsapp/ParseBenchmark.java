@@ -0,0 +1,60 @@
+package com.example.android.newsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast a Guardian response of 20, 200 or 2000 results is turned into news,
+ * with the byte parser of {@link QueryUtils}, with the {@link android.util.JsonReader} parser
+ * it replaced, and with the original String and JSON tree parser as the baseline.
+ *
+ * The gc profiler reports gc.alloc.rate.norm, the bytes allocated per parse. Divide it by the
+ * number of results for the allocation per parsed {@link News}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+
+    @Param({"20", "200", "2000"})
+    public int resultCount;
+
+    private byte[] mPayload;
+
+    @Setup
+    public void setUp() {
+        mPayload = StubGuardianServer.guardianJson(resultCount).getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public List<News> streaming() throws IOException {
+        return QueryUtils.extractFeatureFromStream(new ByteArrayInputStream(mPayload));
+    }
+
+    @Benchmark
+    public List<News> jsonReader() throws IOException {
+        return JsonReaderParser.parse(new ByteArrayInputStream(mPayload));
+    }
+
+    @Benchmark
+    public List<News> legacyJsonTree() throws IOException {
+        return LegacyParser.parse(new ByteArrayInputStream(mPayload));
+    }
+
+    @Benchmark
+    public String legacyReadFromStream() throws IOException {
+        return LegacyParser.readFromStream(new ByteArrayInputStream(mPayload));
+    }
+}
@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Stands in for the framework's Handler when the app code runs on a plain JVM. The benchmarks
+ * never run code on the main thread, so there is nothing to post to and messages run right
+ * away on the calling thread.
+ */
+public class Handler {
+
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable r) {
+        r.run();
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Stands in for the framework's Looper when the app code runs on a plain JVM, where there is
+ * no main thread to loop on.
+ */
+public final class Looper {
+
+    private static final Looper sMainLooper = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return sMainLooper;
+    }
+}
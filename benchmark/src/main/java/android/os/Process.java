@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * Stands in for the framework's Process when the app code runs on a plain JVM. Thread
+ * priorities are left to the JVM.
+ */
+public class Process {
+
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+    public static void setThreadPriority(int priority) {
+    }
+}